@@ -0,0 +1,84 @@
+package chesspkg;
+
+// Precomputed attack tables for the bitboard position model.
+// Squares are indexed row * 8 + col, matching the ChessPiece[][] grid (row 0 is rank 8).
+final class Bitboards {
+    static final int NORTH = 0, NORTH_EAST = 1, EAST = 2, SOUTH_EAST = 3;
+    static final int SOUTH = 4, SOUTH_WEST = 5, WEST = 6, NORTH_WEST = 7;
+
+    private static final int[] DIR_ROW = {-1, -1, 0, 1, 1, 1, 0, -1};
+    private static final int[] DIR_COL = {0, 1, 1, 1, 0, -1, -1, -1};
+
+    static final long[] KNIGHT_ATTACKS = new long[64];
+    static final long[] KING_ATTACKS = new long[64];
+    // PAWN_ATTACKS[color][sq]: squares attacked by a pawn of that color standing on sq
+    static final long[][] PAWN_ATTACKS = new long[2][64];
+    // RAYS[dir][sq]: every square from sq (exclusive) to the edge of the board in that direction
+    static final long[][] RAYS = new long[8][64];
+
+    static {
+        int[][] knightSteps = {{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}, {2, -1}, {2, 1}};
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq >> 3, col = sq & 7;
+            for (int[] step : knightSteps) {
+                KNIGHT_ATTACKS[sq] |= bitAt(row + step[0], col + step[1]);
+            }
+            for (int dir = 0; dir < 8; dir++) {
+                KING_ATTACKS[sq] |= bitAt(row + DIR_ROW[dir], col + DIR_COL[dir]);
+                for (int r = row + DIR_ROW[dir], c = col + DIR_COL[dir]; onBoard(r, c); r += DIR_ROW[dir], c += DIR_COL[dir]) {
+                    RAYS[dir][sq] |= 1L << (r * 8 + c);
+                }
+            }
+            PAWN_ATTACKS[Position.WHITE][sq] = bitAt(row - 1, col - 1) | bitAt(row - 1, col + 1);
+            PAWN_ATTACKS[Position.BLACK][sq] = bitAt(row + 1, col - 1) | bitAt(row + 1, col + 1);
+        }
+    }
+
+    private Bitboards() {}
+
+    private static boolean onBoard(int row, int col) {
+        return row >= 0 && row < 8 && col >= 0 && col < 8;
+    }
+
+    private static long bitAt(int row, int col) {
+        return onBoard(row, col) ? 1L << (row * 8 + col) : 0L;
+    }
+
+    // Sliding attacks along one ray, stopping at (and including) the first blocker
+    static long rayAttacks(int dir, int sq, long occupied) {
+        long ray = RAYS[dir][sq];
+        long blockers = ray & occupied;
+        if (blockers != 0) {
+            // EAST, SOUTH_EAST, SOUTH and SOUTH_WEST run towards higher square indices
+            int blocker = (dir >= EAST && dir <= SOUTH_WEST)
+                    ? Long.numberOfTrailingZeros(blockers)
+                    : 63 - Long.numberOfLeadingZeros(blockers);
+            ray ^= RAYS[dir][blocker];
+        }
+        return ray;
+    }
+
+    static long rookAttacks(int sq, long occupied) {
+        return rayAttacks(NORTH, sq, occupied) | rayAttacks(EAST, sq, occupied)
+             | rayAttacks(SOUTH, sq, occupied) | rayAttacks(WEST, sq, occupied);
+    }
+
+    static long bishopAttacks(int sq, long occupied) {
+        return rayAttacks(NORTH_EAST, sq, occupied) | rayAttacks(SOUTH_EAST, sq, occupied)
+             | rayAttacks(SOUTH_WEST, sq, occupied) | rayAttacks(NORTH_WEST, sq, occupied);
+    }
+
+    static long queenAttacks(int sq, long occupied) {
+        return rookAttacks(sq, occupied) | bishopAttacks(sq, occupied);
+    }
+
+    // Squares strictly between two squares on a shared rank, file or diagonal (0 if not aligned)
+    static long between(int from, int to) {
+        for (int dir = 0; dir < 8; dir++) {
+            if ((RAYS[dir][from] & (1L << to)) != 0) {
+                return RAYS[dir][from] & ~RAYS[dir][to] & ~(1L << to);
+            }
+        }
+        return 0L;
+    }
+}
@@ -0,0 +1,25 @@
+package chesspkg;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+// Common interface for anything that can pick a move for the AI player
+interface ChessEngine {
+    // Best move for pos in UCI notation (e.g. "e2e4"), or null if there is none.
+    // The engine is given the game from pos's root position, so it sees repetitions.
+    String getBestMove(Position pos, SearchLimits limits);
+
+    // Snapshots pos on the calling thread, then searches on the engine's own thread
+    CompletableFuture<String> getBestMoveAsync(Position pos, SearchLimits limits);
+
+    // Discards what the engine remembers from the previous game
+    void newGame();
+
+    // Abandons the search in progress and any request that has not started yet
+    void stop();
+
+    // Search progress as it happens, on the engine's thread; null to stop listening
+    void setInfoListener(Consumer<UciInfo> listener);
+
+    void close();
+}
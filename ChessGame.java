@@ -1,11 +1,13 @@
 package chesspkg;
 
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.animation.AnimationTimer;
 import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
 import javafx.animation.Timeline;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
-import javafx.geometry.Point2D;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
@@ -16,8 +18,9 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.image.Image;
-import javafx.scene.image.WritableImage;
+import javafx.scene.image.ImageView;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
@@ -29,13 +32,22 @@ import javafx.scene.SnapshotParameters;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.util.Duration;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javafx.geometry.Rectangle2D;
 import javafx.stage.Screen;
+import javafx.stage.Window;
 import javafx.scene.control.Separator;
 import javafx.scene.control.TextField;
 
@@ -43,45 +55,7 @@ interface Drawable {
     void draw(GraphicsContext gc, int x, int y);
 }
 
-interface MoveValidator {
-    boolean isValidMove(int newRow, int newCol);
-}
-
-class CastlingRights {
-    private boolean whiteKingMoved, blackKingMoved;
-    private boolean whiteLeftRookMoved, whiteRightRookMoved;
-    private boolean blackLeftRookMoved, blackRightRookMoved;
-
-    boolean canCastle(Color color, boolean kingside) {
-        if (color == Color.WHITE) {
-            return !whiteKingMoved && (kingside ? !whiteRightRookMoved : !whiteLeftRookMoved);
-        }
-        return !blackKingMoved && (kingside ? !blackRightRookMoved : !blackLeftRookMoved);
-    }
-
-    void markKingMoved(Color color) {
-        if (color == Color.WHITE) whiteKingMoved = true;
-        else blackKingMoved = true;
-    }
-
-    void markRookMoved(Color color, boolean left) {
-        if (color == Color.WHITE) {
-            if (left) whiteLeftRookMoved = true;
-            else whiteRightRookMoved = true;
-        } else {
-            if (left) blackLeftRookMoved = true;
-            else blackRightRookMoved = true;
-        }
-    }
-    
-    public void reset() {
-        whiteKingMoved = blackKingMoved = false;
-        whiteLeftRookMoved = whiteRightRookMoved = false;
-        blackLeftRookMoved = blackRightRookMoved = false;
-    }
-}
-
-abstract class ChessPiece implements Drawable, MoveValidator {
+abstract class ChessPiece implements Drawable {
     int row, col;
     Color color;
 
@@ -101,9 +75,6 @@ abstract class ChessPiece implements Drawable, MoveValidator {
 
 class Rook extends ChessPiece {
     Rook(int row, int col, Color color) { super(row, col, color); }
-    @Override public boolean isValidMove(int newRow, int newCol) {
-        return row == newRow || col == newCol;
-    }
     @Override public void draw(GraphicsContext gc, int x, int y) {
         gc.setFill(color);
         gc.fillRect(x + 10, y + 30, 30, 10);
@@ -118,9 +89,6 @@ class Rook extends ChessPiece {
 
 class Bishop extends ChessPiece {
     Bishop(int row, int col, Color color) { super(row, col, color); }
-    @Override public boolean isValidMove(int newRow, int newCol) {
-        return Math.abs(row - newRow) == Math.abs(col - newCol);
-    }
     @Override public void draw(GraphicsContext gc, int x, int y) {
         gc.setFill(color);
         gc.fillRect(x + 15, y + 30, 20, 10);
@@ -137,11 +105,6 @@ class Bishop extends ChessPiece {
 
 class Knight extends ChessPiece {
     Knight(int row, int col, Color color) { super(row, col, color); }
-    @Override public boolean isValidMove(int newRow, int newCol) {
-        int rowDiff = Math.abs(row - newRow);
-        int colDiff = Math.abs(col - newCol);
-        return (rowDiff == 2 && colDiff == 1) || (rowDiff == 1 && colDiff == 2);
-    }
     @Override public void draw(GraphicsContext gc, int x, int y) {
         gc.setFill(color);
         gc.fillRect(x + 15, y + 35, 20, 5);
@@ -158,9 +121,6 @@ class Knight extends ChessPiece {
 
 class Queen extends ChessPiece {
     Queen(int row, int col, Color color) { super(row, col, color); }
-    @Override public boolean isValidMove(int newRow, int newCol) {
-        return (row == newRow || col == newCol) || (Math.abs(row - newRow) == Math.abs(col - newCol));
-    }
     @Override public void draw(GraphicsContext gc, int x, int y) {
         gc.setFill(color);
         gc.fillRect(x + 15, y + 35, 20, 5);
@@ -177,9 +137,6 @@ class Queen extends ChessPiece {
 
 class King extends ChessPiece {
     King(int row, int col, Color color) { super(row, col, color); }
-    @Override public boolean isValidMove(int newRow, int newCol) {
-        return Math.abs(row - newRow) <= 1 && Math.abs(col - newCol) <= 1;
-    }
     @Override public void draw(GraphicsContext gc, int x, int y) {
         gc.setFill(color);
         gc.fillRect(x + 15, y + 35, 20, 5);
@@ -196,12 +153,6 @@ class King extends ChessPiece {
 
 class Pawn extends ChessPiece {
     Pawn(int row, int col, Color color) { super(row, col, color); }
-    @Override public boolean isValidMove(int newRow, int newCol) {
-        int direction = (color == Color.WHITE) ? -1 : 1;
-        if (col == newCol && (newRow - row) == direction) return true;
-        if (row == (color == Color.WHITE ? 6 : 1) && col == newCol && (newRow - row) == 2 * direction) return true;
-        return false;
-    }
     @Override public void draw(GraphicsContext gc, int x, int y) {
         gc.setFill(color);
         gc.fillRect(x + 15, y + 35, 20, 5);
@@ -217,6 +168,9 @@ class Pawn extends ChessPiece {
 public class ChessGame extends Application {
     private static final int SIZE = 8;
     private static int SQUARE_SIZE = 50;
+    private static final int MIN_SQUARE_SIZE = 20;
+    // Past this halfmove clock a search can reach the fifty-move rule, so its result depends on more than the key
+    private static final int CACHE_MAX_HALFMOVE_CLOCK = 80;
     private ChessPiece[][] board = new ChessPiece[SIZE][SIZE];
     private int selectedRow = -1, selectedCol = -1;
     private boolean whiteTurn = true;
@@ -224,17 +178,82 @@ public class ChessGame extends Application {
     private ChessBoard chessBoard;
     private boolean whiteKingInCheck, blackKingInCheck;
     private Timeline kingFlashAnimation;
-    private final CastlingRights castlingRights = new CastlingRights();
-    private Map<String, Image> pieceImages = new HashMap<>();
-    private Set<Point2D> legalMoveCache = new HashSet<>();
-    private int[] whiteKingPos = new int[2];
-    private int[] blackKingPos = new int[2];
+    private final Position position = new Position();
+    // Piece images at the current square size and output scale; null until the first render
+    private SpriteAtlas pieceAtlas;
+    // Piece and background images are painted here when the board is resized, so dragging the
+    // window only scales the old images until the sharp ones are ready
+    private final ExecutorService boardRasterizer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "board-rasterizer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final PauseTransition rasterizeDelay = new PauseTransition(Duration.millis(150));
+    private long legalTargets;
+    // From and to squares of the last move played, marked on the board
+    private long lastMoveSquares;
+    private final TurnState turnState = new TurnState();
     private boolean boardFlipped = false;
     
+    // Stockfish processes are shared through the pool: the game leases one when a difficulty first
+    // needs it and keeps it, analysis leases another per job
+    private EnginePool enginePool;
+    private EnginePool.Lease gameLease;
+    // The game engine's lease while the pool starts or checks it; the built-in engine plays meanwhile
+    private CompletableFuture<EnginePool.Lease> gameLeaseRequest;
+    // The selected difficulty plays on Stockfish, once one is leased
+    private boolean wantStockfish;
     private StockfishEngine stockfish;
+    // The pool could not start Stockfish; it is not asked again
+    private boolean stockfishMissing;
+    private final SearchEngine builtInEngine = new SearchEngine();
+    private ChessEngine engine = builtInEngine;
+    private PolyglotBook openingBook;
+    private ResultCache resultCache;
+    private boolean outOfBook;
+    // Set when a clock runs out; TurnState only knows the endings the position itself decides
+    private boolean flagFallen;
+    // The engine request whose answer the board is waiting for; anything else that completes is stale
+    private CompletableFuture<String> pendingAIMove;
+    // The engine searching for pendingAIMove; null for book and cached moves
+    private ChessEngine pendingAIEngine;
+    
+    // Live analysis: the engine thread copies each scored info line here and the FX thread
+    // repaints at most once per pulse, however fast the engine reports
+    private final UciInfo latestInfo = new UciInfo();
+    private final AtomicBoolean analysisRefreshPending = new AtomicBoolean();
+    private final Runnable analysisRefresh = this::refreshAnalysis;
+    private final StringBuilder analysisText = new StringBuilder();
+    private ProgressBar evalBar;
+    private Label evalLabel;
+    private Label pvLabel;
+    
+    // MultiPV analysis of the position on the board while the human is to move (Stockfish only)
+    private EngineConfig engineConfig;
+    private CheckBox analysisCheckBox;
+    private Label[] multiPvLabels;
+    private UciInfo[] multiPvLines;
+    private CompletableFuture<EnginePool.Lease> analysisLease;
+    private int analysisSideToMove;
+    // Tags the running analysis so lines still draining from an older one are dropped
+    private volatile int analysisId;
+    private final AtomicBoolean multiPvRefreshPending = new AtomicBoolean();
+    private final Runnable multiPvRefresh = this::refreshMultiPv;
     private boolean playingAgainstAI = true;
     private boolean aiIsBlack = true;
     private ComboBox<String> difficultyComboBox;
+    private ComboBox<String> timeControlComboBox;
+    // Difficulty preset as a time budget and optional node limit; the game clock is added per move
+    private SearchLimits difficultyLimits = SearchLimits.NONE;
+    // 1 (Easy) to 4 (Expert); cached moves are only replayed at the level that searched them
+    private int difficultyLevel;
+    
+    private final GameClock gameClock = new GameClock(10 * 60_000L, 5_000L);
+    private Timeline clockTicker;
+    private Label whiteClockLabel;
+    private Label blackClockLabel;
+    // What each clock label shows, in tenths of a second; setText only runs when this changes
+    private final long[] shownClockTenths = {-1L, -1L};
     private ComboBox<String> playerColorComboBox;
     
     private ComboBox<ChessTheme> themeComboBox;
@@ -249,7 +268,12 @@ public class ChessGame extends Application {
     @Override
     public void start(Stage primaryStage) {
         primaryStage.setTitle("Chess Game");
-        stockfish = new StockfishEngine();
+        engineConfig = loadEngineConfig();
+        enginePool = new EnginePool(engineConfig.engines,
+                () -> new StockfishEngine(engineConfig.stockfishPath), engineConfig);
+        builtInEngine.setInfoListener(this::onEngineInfo);
+        openingBook = openOpeningBook();
+        resultCache = openResultCache();
         
         // Get the screen size
         Rectangle2D screenBounds = Screen.getPrimary().getVisualBounds();
@@ -269,19 +293,29 @@ public class ChessGame extends Application {
 
         statusLabel = new Label("White's turn");
         statusLabel.setFont(Font.font("Sans-Serif", FontWeight.BOLD, 20));
-        HBox topBox = new HBox(statusLabel);
+        whiteClockLabel = new Label();
+        blackClockLabel = new Label();
+        whiteClockLabel.setFont(Font.font("Monospaced", FontWeight.BOLD, 20));
+        blackClockLabel.setFont(Font.font("Monospaced", FontWeight.BOLD, 20));
+        HBox topBox = new HBox(40, whiteClockLabel, statusLabel, blackClockLabel);
         topBox.setAlignment(Pos.CENTER);
         topBox.setPadding(new Insets(5));
         root.setTop(topBox);
 
         chessBoard = new ChessBoard();
-        chessBoard.setCache(true);
         
         // Center the chess board with proper padding
         StackPane centerPane = new StackPane();
         centerPane.setPadding(new Insets(10));
         centerPane.getChildren().add(chessBoard);
         root.setCenter(centerPane);
+        // The board follows the window in both directions
+        chessBoard.setMinSize(0, 0);
+        centerPane.setMinSize(0, 0);
+        centerPane.widthProperty().addListener((obs, oldWidth, width) -> resizeBoard(centerPane));
+        centerPane.heightProperty().addListener((obs, oldHeight, height) -> resizeBoard(centerPane));
+        primaryStage.outputScaleXProperty().addListener((obs, oldScale, scale) -> scheduleRasterize());
+        rasterizeDelay.setOnFinished(e -> rasterizeBoard());
         
         // Configure animation for king in check
         kingFlashAnimation = new Timeline(new KeyFrame(Duration.seconds(0.5), e -> {
@@ -292,6 +326,10 @@ public class ChessGame extends Application {
         kingFlashAnimation.setCycleCount(Timeline.INDEFINITE);
         kingFlashAnimation.setAutoReverse(true);
 
+        // The clock keeps exact time on its own; this only refreshes the labels and checks for a flag
+        clockTicker = new Timeline(new KeyFrame(Duration.millis(100), e -> updateClocks()));
+        clockTicker.setCycleCount(Timeline.INDEFINITE);
+
         // Configure control panel with appropriate width
         VBox controlPanel = new VBox(15);
         controlPanel.setPadding(new Insets(15));
@@ -311,7 +349,10 @@ public class ChessGame extends Application {
         aiBox.setAlignment(Pos.CENTER_LEFT);
         CheckBox aiCheckBox = new CheckBox("Play against AI");
         aiCheckBox.setSelected(playingAgainstAI);
-        aiCheckBox.setOnAction(e -> playingAgainstAI = aiCheckBox.isSelected());
+        aiCheckBox.setOnAction(e -> {
+            playingAgainstAI = aiCheckBox.isSelected();
+            if (!playingAgainstAI) cancelAIMove();
+        });
         aiBox.getChildren().add(aiCheckBox);
 
         // Second row: AI Difficulty
@@ -321,17 +362,20 @@ public class ChessGame extends Application {
         difficultyComboBox = new ComboBox<>();
         difficultyComboBox.getItems().addAll("Easy", "Medium", "Hard", "Expert");
         difficultyComboBox.setValue("Medium");
-        difficultyComboBox.setOnAction(e -> {
-            String difficulty = difficultyComboBox.getValue();
-            switch (difficulty) {
-                case "Easy": stockfish.setSearchDepth(1); break;
-                case "Medium": stockfish.setSearchDepth(7); break;
-                case "Hard": stockfish.setSearchDepth(12); break;
-                case "Expert": stockfish.setSearchDepth(20); break;
-            }
-        });
+        difficultyComboBox.setOnAction(e -> applyDifficulty(difficultyComboBox.getValue()));
+        applyDifficulty(difficultyComboBox.getValue());
         difficultyBox.getChildren().addAll(difficultyLabel, difficultyComboBox);
 
+        // Time control (minutes + increment seconds); changing it starts a new game
+        HBox timeControlBox = new HBox(10);
+        timeControlBox.setAlignment(Pos.CENTER_LEFT);
+        Label timeControlLabel = new Label("Time Control:");
+        timeControlComboBox = new ComboBox<>();
+        timeControlComboBox.getItems().addAll("3+2", "5+3", "10+5", "15+10", "30+20");
+        timeControlComboBox.setValue("10+5");
+        timeControlComboBox.setOnAction(e -> resetGame());
+        timeControlBox.getChildren().addAll(timeControlLabel, timeControlComboBox);
+
         // Third row: Player color selection
         HBox colorBox = new HBox(10);
         colorBox.setAlignment(Pos.CENTER_LEFT);
@@ -354,7 +398,7 @@ public class ChessGame extends Application {
         resetBox.getChildren().add(resetButton);
 
         // Add all rows to the game settings section
-        gameSettingsBox.getChildren().addAll(aiBox, difficultyBox, colorBox, resetBox);
+        gameSettingsBox.getChildren().addAll(aiBox, difficultyBox, timeControlBox, colorBox, resetBox);
 
         // Theme Settings Section
         Label themeSettingsLabel = new Label("Theme Settings");
@@ -373,7 +417,7 @@ public class ChessGame extends Application {
         themeComboBox.setValue(currentTheme);
         themeComboBox.setOnAction(e -> {
             currentTheme = themeComboBox.getValue();
-            chessBoard.draw();
+            chessBoard.changeTheme();
         });
         themeComboBox.setPrefWidth(150);
         themeBox.getChildren().addAll(themeLabel, themeComboBox);
@@ -393,18 +437,42 @@ public class ChessGame extends Application {
         flipBoardButton.setPrefWidth(150);
         flipBoardButton.setOnAction(e -> {
             boardFlipped = !boardFlipped;
-            chessBoard.draw();
+            chessBoard.redrawAll();
         });
         flipBoardBox.getChildren().add(flipBoardButton);
 
         // Add all rows to the theme settings section
         themeSettingsBox.getChildren().addAll(themeBox, darkModeBox, flipBoardBox);
 
+        // Engine analysis section: evaluation bar (White's share) and principal variation
+        Label analysisLabel = new Label("Engine Analysis");
+        analysisLabel.setFont(Font.font("Sans-Serif", FontWeight.BOLD, 16));
+        evalBar = new ProgressBar(0.5);
+        evalBar.setPrefWidth(250);
+        evalLabel = new Label("");
+        pvLabel = new Label("");
+        pvLabel.setWrapText(true);
+        pvLabel.setMaxWidth(270);
+        analysisCheckBox = new CheckBox("Analyse my moves (" + engineConfig.multiPv + " lines)");
+        updateAnalysisAvailability();
+        analysisCheckBox.setOnAction(e -> updateAnalysisMode());
+        VBox multiPvBox = new VBox(4);
+        multiPvLabels = new Label[engineConfig.multiPv];
+        multiPvLines = new UciInfo[engineConfig.multiPv];
+        for (int i = 0; i < multiPvLabels.length; i++) {
+            multiPvLabels[i] = new Label("");
+            multiPvLabels[i].setMaxWidth(270);
+            multiPvLines[i] = new UciInfo();
+            multiPvBox.getChildren().add(multiPvLabels[i]);
+        }
+
         // Add all sections to the control panel with spacing
         controlPanel.getChildren().addAll(
             gameSettingsLabel, gameSettingsBox,
             new Separator(), // Add separator between sections
-            themeSettingsLabel, themeSettingsBox
+            themeSettingsLabel, themeSettingsBox,
+            new Separator(),
+            analysisLabel, evalBar, evalLabel, pvLabel, analysisCheckBox, multiPvBox
         );
 
         root.setRight(controlPanel);
@@ -418,17 +486,170 @@ public class ChessGame extends Application {
         applyTheme(false);
         initializeBoard();
         initializePieceImages();
-        chessBoard.draw();
+        chessBoard.redrawAll();
+        startClock();
         if (playingAgainstAI && !aiIsBlack) {
             makeAIMove();
         }
         primaryStage.show();
     }
 
+    // Results persist in results.cache in the working directory, or at -Dchess.cache=<path>; if the
+    // file cannot be opened, results are still cached in memory for this session
+    private ResultCache openResultCache() {
+        Path cachePath = Paths.get(System.getProperty("chess.cache", "results.cache"));
+        try {
+            return ResultCache.open(cachePath, ResultCache.DEFAULT_MEMORY_ENTRIES, ResultCache.DEFAULT_DISK_SLOTS);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return ResultCache.inMemory(ResultCache.DEFAULT_MEMORY_ENTRIES);
+        }
+    }
+
+    // The book is optional; without it every move goes to the engine
+    private PolyglotBook openOpeningBook() {
+        Path bookPath = Paths.get(System.getProperty("chess.book", "book.bin"));
+        if (!Files.isRegularFile(bookPath)) return null;
+        try {
+            return PolyglotBook.open(bookPath);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Easy and Medium run on the built-in engine; Hard and Expert use Stockfish when it is installed
+    private void applyDifficulty(String difficulty) {
+        // A search already under way is restarted with the new settings
+        boolean thinking = pendingAIMove != null;
+        cancelAIMove();
+        wantStockfish = false;
+        difficultyLevel = difficultyComboBox.getItems().indexOf(difficulty) + 1;
+        switch (difficulty) {
+            case "Easy": useBuiltInEngine(SearchLimits.NONE.withMoveTime(200).withNodes(5_000)); break;
+            case "Medium": useBuiltInEngine(SearchLimits.NONE.withMoveTime(1000)); break;
+            case "Hard": useStockfish(SearchLimits.NONE.withMoveTime(1000).withNodes(500_000)); break;
+            case "Expert": useStockfish(SearchLimits.NONE); break;
+        }
+        if (thinking) makeAIMove();
+        // Switching away from Stockfish stops it, analysis included
+        if (analysisLease != null) updateAnalysisMode();
+    }
+
+    private void useBuiltInEngine(SearchLimits limits) {
+        // Stockfish may still be pondering on the last game's position
+        if (stockfishAvailable()) stockfish.stop();
+        difficultyLimits = limits;
+        engine = builtInEngine;
+    }
+
+    // Without Stockfish the same budget goes to the built-in engine
+    private void useStockfish(SearchLimits limits) {
+        if (!stockfishMissing && !stockfishAvailable()) leaseGameEngine();
+        if (stockfishAvailable()) {
+            stockfish.setPonder(true);
+            difficultyLimits = limits;
+            engine = stockfish;
+        } else {
+            // Also while the pool is still starting an engine; it takes over when it arrives
+            useBuiltInEngine(limits);
+        }
+        wantStockfish = true;
+    }
+
+    // Asks the pool for the game's engine, replacing one whose process died, without waiting for it:
+    // starting or checking a process takes seconds, and the pool may need the FX thread to hand a
+    // freed engine to a queued analysis first. Without Stockfish this leaves it null.
+    private void leaseGameEngine() {
+        if (gameLeaseRequest != null) return;
+        if (gameLease != null) gameLease.close();
+        gameLease = null;
+        stockfish = null;
+        CompletableFuture<EnginePool.Lease> request = enginePool.lease();
+        gameLeaseRequest = request;
+        request.whenComplete((lease, error) -> Platform.runLater(() -> {
+            if (gameLeaseRequest != request) {
+                if (lease != null) lease.close();
+                return;
+            }
+            gameLeaseRequest = null;
+            if (error != null) {
+                Throwable cause = (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+                System.err.println("Stockfish unavailable: " + cause.getMessage());
+                stockfishMissing = true;
+            } else {
+                gameLease = lease;
+                stockfish = lease.engine();
+                stockfish.setInfoListener(this::onEngineInfo);
+                // A search already under way finishes on the built-in engine; the next one switches
+                if (wantStockfish && pendingAIMove == null) useStockfish(difficultyLimits);
+            }
+            updateAnalysisAvailability();
+        }));
+    }
+
+    private boolean stockfishAvailable() {
+        return stockfish != null && stockfish.isAvailable();
+    }
+
+    // Analysis needs an engine of its own next to the one playing the game
+    private void updateAnalysisAvailability() {
+        analysisCheckBox.setDisable(stockfishMissing || engineConfig.engines < 2);
+    }
+
+    // Time control string "minutes+increment" as chosen in the combo box
+    private void applyTimeControl(String timeControl) {
+        int plus = timeControl.indexOf('+');
+        long baseMillis = Long.parseLong(timeControl.substring(0, plus)) * 60_000L;
+        long incrementMillis = Long.parseLong(timeControl.substring(plus + 1)) * 1_000L;
+        gameClock.reset(baseMillis, incrementMillis);
+    }
+
+    private void startClock() {
+        applyTimeControl(timeControlComboBox.getValue());
+        gameClock.start(Position.WHITE);
+        clockTicker.play();
+        updateClocks();
+    }
+
+    private void updateClocks() {
+        updateClockLabel(whiteClockLabel, Position.WHITE);
+        updateClockLabel(blackClockLabel, Position.BLACK);
+        if (gameClock.hasFlagFallen()) onFlagFall(gameClock.getRunningColor());
+    }
+
+    // Minutes and seconds, switching to tenths in the last ten seconds
+    private void updateClockLabel(Label label, int color) {
+        long millis = gameClock.remainingMillis(color);
+        long tenths = (millis < 10_000L) ? millis / 100 : (millis / 1000) * 10;
+        if (tenths == shownClockTenths[color]) return;
+        shownClockTenths[color] = tenths;
+        long seconds = tenths / 10;
+        if (millis < 10_000L) {
+            label.setText("0:0" + seconds + "." + (tenths % 10));
+        } else {
+            label.setText(seconds / 60 + ":" + ((seconds % 60 < 10) ? "0" : "") + seconds % 60);
+        }
+    }
+
+    private void onFlagFall(int loser) {
+        flagFallen = true;
+        gameClock.stop();
+        clockTicker.stop();
+        cancelAIMove();
+        stopAnalysis();
+        String winner = (loser == Position.WHITE) ? "Black" : "White";
+        statusLabel.setText((loser == Position.WHITE ? "White" : "Black") + " lost on time! " + winner + " wins!");
+        // Dialogs cannot block inside an animation callback
+        Platform.runLater(() -> showGameOverDialog(winner + " wins on time!"));
+    }
+
     private void applyTheme(boolean darkMode) {
         if (darkMode) {
             root.setStyle("-fx-background-color: #1A1A2E;");
             statusLabel.setStyle("-fx-text-fill: #E0E0E0; -fx-font-size: 20pt;");
+            whiteClockLabel.setStyle("-fx-text-fill: #E0E0E0;");
+            blackClockLabel.setStyle("-fx-text-fill: #E0E0E0;");
             VBox rightPanel = (VBox) root.getRight();
             for (Node node : rightPanel.getChildren()) {
                 applyNodeStyle(node, true);
@@ -437,6 +658,8 @@ public class ChessGame extends Application {
         } else {
             root.setStyle("-fx-background-color: #F5F5F5;");
             statusLabel.setStyle("-fx-text-fill: black; -fx-font-size: 20pt;");
+            whiteClockLabel.setStyle("-fx-text-fill: black;");
+            blackClockLabel.setStyle("-fx-text-fill: black;");
             VBox rightPanel = (VBox) root.getRight();
             for (Node node : rightPanel.getChildren()) {
                 applyNodeStyle(node, false);
@@ -497,364 +720,502 @@ public class ChessGame extends Application {
     }
 
     private void initializeBoard() {
-        placePieces(0, 1, Color.BLACK);
-        placePieces(7, 6, Color.WHITE);
-        whiteKingPos[0] = 7;
-        whiteKingPos[1] = 4;
-        blackKingPos[0] = 0;
-        blackKingPos[1] = 4;
+        position.setStartPosition();
+        turnState.update(position);
+        syncBoardFromPosition();
         chessBoard.draw();
     }
 
-    private void initializePieceImages() {
-        for (Color color : new Color[]{Color.WHITE, Color.BLACK}) {
-            String colorName = (color == Color.WHITE) ? "White" : "Black";
-            renderPieceToImage(new Pawn(0, 0, color), "Pawn" + colorName);
-            renderPieceToImage(new Rook(0, 0, color), "Rook" + colorName);
-            renderPieceToImage(new Knight(0, 0, color), "Knight" + colorName);
-            renderPieceToImage(new Bishop(0, 0, color), "Bishop" + colorName);
-            renderPieceToImage(new Queen(0, 0, color), "Queen" + colorName);
-            renderPieceToImage(new King(0, 0, color), "King" + colorName);
-        }
-    }
-
-    private void renderPieceToImage(ChessPiece piece, String key) {
-        Canvas canvas = new Canvas(SQUARE_SIZE, SQUARE_SIZE);
-        GraphicsContext gc = canvas.getGraphicsContext2D();
-        double scaleFactor = SQUARE_SIZE / 50.0;
-        gc.save();
-        gc.scale(scaleFactor, scaleFactor);
-        piece.draw(gc, 0, 0);
-        gc.restore();
-        SnapshotParameters params = new SnapshotParameters();
-        params.setFill(Color.TRANSPARENT);
-        WritableImage image = canvas.snapshot(params, null);
-        pieceImages.put(key, image);
-    }
-
-    private void placePieces(int backRow, int pawnRow, Color color) {
-        for (int i = 0; i < SIZE; i++) board[pawnRow][i] = new Pawn(pawnRow, i, color);
-        board[backRow][0] = new Rook(backRow, 0, color);
-        board[backRow][7] = new Rook(backRow, 7, color);
-        board[backRow][1] = new Knight(backRow, 1, color);
-        board[backRow][6] = new Knight(backRow, 6, color);
-        board[backRow][2] = new Bishop(backRow, 2, color);
-        board[backRow][5] = new Bishop(backRow, 5, color);
-        board[backRow][3] = new Queen(backRow, 3, color);
-        board[backRow][4] = new King(backRow, 4, color);
-    }
-
-    private boolean isPathClear(int startRow, int startCol, int endRow, int endCol) {
-        int rowStep = Integer.compare(endRow, startRow);
-        int colStep = Integer.compare(endCol, startCol);
-        int currentRow = startRow + rowStep;
-        int currentCol = startCol + colStep;
-        while (currentRow != endRow || currentCol != endCol) {
-            if (board[currentRow][currentCol] != null) return false;
-            currentRow += rowStep;
-            currentCol += colStep;
+    // Rebuild the drawing grid from the bitboard position
+    private void syncBoardFromPosition() {
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                int piece = position.pieceAt(row * SIZE + col);
+                board[row][col] = (piece == Position.EMPTY) ? null : createPiece(piece, row, col);
+            }
         }
-        return true;
     }
 
-    private boolean isKingInCheck(Color kingColor) {
-        int[] kingPos = (kingColor == Color.WHITE) ? whiteKingPos : blackKingPos;
-        for (int r = 0; r < SIZE; r++) {
-            for (int c = 0; c < SIZE; c++) {
-                if (board[r][c] != null && board[r][c].color != kingColor) {
-                    if (isValidMoveWithoutCheckTest(r, c, kingPos[0], kingPos[1])) return true;
-                }
-            }
+    private ChessPiece createPiece(int piece, int row, int col) {
+        Color color = Position.colorOf(piece) == Position.WHITE ? Color.WHITE : Color.BLACK;
+        switch (Position.typeOf(piece)) {
+            case Position.PAWN: return new Pawn(row, col, color);
+            case Position.KNIGHT: return new Knight(row, col, color);
+            case Position.BISHOP: return new Bishop(row, col, color);
+            case Position.ROOK: return new Rook(row, col, color);
+            case Position.QUEEN: return new Queen(row, col, color);
+            default: return new King(row, col, color);
         }
-        return false;
     }
 
-    private void updateKingPosition(Color color, int row, int col) {
-        if (color == Color.WHITE) {
-            whiteKingPos[0] = row;
-            whiteKingPos[1] = col;
-        } else {
-            blackKingPos[0] = row;
-            blackKingPos[1] = col;
-        }
-    }
-
-    private boolean isValidMoveWithoutCheckTest(int startRow, int startCol, int endRow, int endCol) {
-        ChessPiece piece = board[startRow][startCol];
-        if (piece == null) return false;
-        if (board[endRow][endCol] != null && board[endRow][endCol].color == piece.color) return false;
-        if (piece instanceof Pawn) {
-            int direction = (piece.color == Color.WHITE) ? -1 : 1;
-            int startRank = (piece.color == Color.WHITE) ? 6 : 1;
-            if (startCol == endCol) {
-                if (board[endRow][endCol] != null) return false;
-                if (startRow == startRank && endRow == startRow + 2 * direction) {
-                    return board[startRow + direction][startCol] == null;
-                }
-                return endRow == startRow + direction;
-            } else if (Math.abs(startCol - endCol) == 1) {
-                return endRow == startRow + direction && 
-                      board[endRow][endCol] != null && 
-                      board[endRow][endCol].color != piece.color;
-            }
-            return false;
-        }
-        if (!piece.isValidMove(endRow, endCol)) return false;
-        if (piece instanceof Rook || piece instanceof Bishop || piece instanceof Queen) {
-            return isPathClear(startRow, startCol, endRow, endCol);
-        }
-        return true;
+    private void initializePieceImages() {
+        double scale = outputScale();
+        pieceAtlas = SpriteAtlas.rasterize(SpriteAtlas.paint(SQUARE_SIZE, scale, (gc, piece) -> createPiece(piece, 0, 0).draw(gc, 0, 0)),
+                SQUARE_SIZE, scale);
+    }
+
+    // Device pixels per layout unit of the window showing the board
+    private double outputScale() {
+        Window window = (chessBoard.getScene() == null) ? null : chessBoard.getScene().getWindow();
+        return (window != null && window.isShowing()) ? window.getOutputScaleX() : Screen.getPrimary().getOutputScaleX();
+    }
+
+    // Largest square size that fits the space the window leaves for the board
+    private void resizeBoard(StackPane centerPane) {
+        Insets padding = centerPane.getPadding();
+        Insets border = chessBoard.getInsets();
+        double width = centerPane.getWidth() - padding.getLeft() - padding.getRight() - border.getLeft() - border.getRight();
+        double height = centerPane.getHeight() - padding.getTop() - padding.getBottom() - border.getTop() - border.getBottom();
+        if (width <= 0 || height <= 0) return;
+        int squareSize = Math.max(MIN_SQUARE_SIZE, (int) (Math.min(width, height) / SIZE));
+        if (squareSize == SQUARE_SIZE) return;
+        SQUARE_SIZE = squareSize;
+        chessBoard.resizeSquares();
+        scheduleRasterize();
+    }
+
+    // Re-rasterizes once resizing has paused, so a drag does not start a job per pixel
+    private void scheduleRasterize() {
+        rasterizeDelay.playFromStart();
     }
 
-    private boolean canCastle(int startRow, int startCol, int endRow, int endCol) {
-        ChessPiece king = board[startRow][startCol];
-        if (!(king instanceof King)) return false;
-        boolean isWhite = king.color == Color.WHITE;
-        int homeRow = isWhite ? 7 : 0;
-        if (startRow != homeRow || startCol != 4 || endRow != homeRow || Math.abs(endCol - startCol) != 2) return false;
-        if (!castlingRights.canCastle(king.color, endCol == 6)) return false;
-        if ((isWhite && whiteKingInCheck) || (!isWhite && blackKingInCheck)) return false;
-        int rookCol = (endCol == 2) ? 0 : 7;
-        ChessPiece rook = board[homeRow][rookCol];
-        if (rook == null || !(rook instanceof Rook) || rook.color != king.color) return false;
-        return isPathClear(startRow, startCol, startRow, rookCol);
+    // Paints the atlas and the current background off the FX thread, then snapshots them on it.
+    // Results for a size or scale that has changed in the meantime are dropped; a newer job follows.
+    private void rasterizeBoard() {
+        int squareSize = SQUARE_SIZE;
+        double scale = outputScale();
+        ChessTheme theme = currentTheme;
+        boolean flipped = boardFlipped;
+        if (pieceAtlas != null && pieceAtlas.matches(squareSize, scale) && chessBoard.backgroundMatches(squareSize, scale)) {
+            return;
+        }
+        CompletableFuture.supplyAsync(() -> new Canvas[] {
+                SpriteAtlas.paint(squareSize, scale, (gc, piece) -> createPiece(piece, 0, 0).draw(gc, 0, 0)),
+                chessBoard.paintBackground(theme, flipped, squareSize, scale)
+        }, boardRasterizer).thenAcceptAsync(painted -> {
+            if (squareSize != SQUARE_SIZE || scale != outputScale()) return;
+            pieceAtlas = SpriteAtlas.rasterize(painted[0], squareSize, scale);
+            chessBoard.installBackground(theme, flipped, squareSize, scale, painted[1]);
+            chessBoard.redrawPieces();
+        }, Platform::runLater);
     }
 
-    private ChessPiece createPromotionPiece(char type, int row, int col, Color color) {
+    private int promotionPieceType(char type) {
         switch (Character.toLowerCase(type)) {
-            case 'q': return new Queen(row, col, color);
-            case 'r': return new Rook(row, col, color);
-            case 'b': return new Bishop(row, col, color);
-            case 'n': return new Knight(row, col, color);
-            default: return new Queen(row, col, color);
+            case 'r': return Position.ROOK;
+            case 'b': return Position.BISHOP;
+            case 'n': return Position.KNIGHT;
+            default: return Position.QUEEN;
         }
     }
 
     private void resetGame() {
+        cancelAIMove();
+        chessBoard.cancelAnimation();
+        engine.newGame();
         board = new ChessPiece[SIZE][SIZE];
         initializeBoard();
         whiteTurn = true;
         selectedRow = selectedCol = -1;
-        legalMoveCache.clear();
+        legalTargets = 0L;
+        lastMoveSquares = 0L;
         whiteKingInCheck = blackKingInCheck = false;
-        castlingRights.reset();
+        outOfBook = false;
+        flagFallen = false;
+        clearAnalysis();
+        statusLabel.setText("White's turn");
+        startClock();
         if (playingAgainstAI && !aiIsBlack) {
             makeAIMove();
         }
+        updateAnalysisMode();
         updateCheckStatus();
         chessBoard.draw();
     }
 
     @Override
     public void stop() throws Exception {
-        if (stockfish != null) {
-            stockfish.close();
+        cancelAIMove();
+        builtInEngine.close();
+        if (stockfish != null && stockfish.getPonderSearches() > 0) {
+            System.out.printf("Pondering: %d of %d predictions hit (%.1f%%)%n",
+                    stockfish.getPonderHits(), stockfish.getPonderSearches(), stockfish.getPonderHitRate() * 100);
+        }
+        stopAnalysis();
+        if (gameLease != null) gameLease.close();
+        if (gameLeaseRequest != null) {
+            // No FX pulse will install it any more, so a lease that arrives now is closed at once
+            gameLeaseRequest.thenAccept(EnginePool.Lease::close);
+            gameLeaseRequest = null;
+        }
+        enginePool.close();
+        if (enginePool.getSpawnedCount() > 0) {
+            System.out.printf("Engine pool: %d processes started, %d recycled%n",
+                    enginePool.getSpawnedCount(), enginePool.getRecycledCount());
+        }
+        System.out.printf("Result cache: %d of %d lookups hit (%.1f%%, %d from disk), %d KB in memory, %d of %d KB on disk%n",
+                resultCache.getHitCount(), resultCache.getLookupCount(), resultCache.getHitRate() * 100,
+                resultCache.getDiskHitCount(), resultCache.getMemoryBytes() / 1024,
+                resultCache.getDiskBytes() / 1024, resultCache.getDiskCapacityBytes() / 1024);
+        resultCache.close();
+        boardRasterizer.shutdownNow();
+        if (chessBoard.getFrameCount() > 0) {
+            System.out.printf("Board: %d frames, %d squares repainted (%.1f per frame)%n",
+                    chessBoard.getFrameCount(), chessBoard.getSquaresRepainted(),
+                    (double) chessBoard.getSquaresRepainted() / chessBoard.getFrameCount());
+        }
+        // Scriptable like Perft --suite: a frame that allocated fails the run with exit status 1
+        boolean allocationCheckFailed = chessBoard.getAllocatingFrames() > 0;
+        if (chessBoard.getCheckedFrames() > 0) {
+            System.out.printf("Board allocation check %s: %d of %d frames allocated (worst %d bytes)%n",
+                    allocationCheckFailed ? "FAILED" : "passed", chessBoard.getAllocatingFrames(),
+                    chessBoard.getCheckedFrames(), chessBoard.getWorstFrameBytes());
+        }
+        if (chessBoard.getAnimationFrames() > 0) {
+            System.out.printf("Animation: %d frames, %.2f ms average render, %.2f ms worst, %d frames dropped%n",
+                    chessBoard.getAnimationFrames(), chessBoard.getAverageRenderMillis(),
+                    chessBoard.getWorstRenderMillis(), chessBoard.getDroppedFrames());
+        }
+        if (openingBook != null) {
+            System.out.printf("Opening book: %d of %d probes hit (%.1f%%)%n",
+                    openingBook.getHitCount(), openingBook.getProbeCount(), openingBook.getHitRate() * 100);
         }
         super.stop();
+        if (allocationCheckFailed) System.exit(1);
+    }
+
+    private boolean isAITurn() {
+        return playingAgainstAI && whiteTurn == !aiIsBlack;
     }
 
     private void makeAIMove() {
-        String fen = stockfish.boardToFEN(board, whiteTurn, castlingRights);
-        String bestMove = stockfish.getBestMove(fen);
-        if (bestMove != null && bestMove.length() >= 4) {
-            int startCol = bestMove.charAt(0) - 'a';
-            int startRow = 8 - Character.getNumericValue(bestMove.charAt(1));
-            int endCol = bestMove.charAt(2) - 'a';
-            int endRow = 8 - Character.getNumericValue(bestMove.charAt(3));
-            char promotionPiece = (bestMove.length() >= 5) ? bestMove.charAt(4) : ' ';
-            movePiece(startRow, startCol, endRow, endCol, promotionPiece);
+        // A move queued by switchTurn can fire after the game was reset or the AI turned off
+        if (!isAITurn() || pendingAIMove != null) return;
+        // The human's move or a clock may have ended the game; an engine asked anyway answers "(none)"
+        if (isGameOver()) return;
+        int move = Move.NONE;
+        // Once a game leaves the book it does not come back, so stop probing after the first miss
+        if (openingBook != null && !outOfBook) {
+            move = turnState.findUciMove(openingBook.probe(position));
+            outOfBook = move == Move.NONE;
+        }
+        if (move != Move.NONE) {
+            applyAIMoveLater(move);
+            return;
+        }
+        // A Stockfish process that died since the last move is replaced from the pool, and one the
+        // pool has handed over since takes over from the built-in engine
+        if (wantStockfish && (engine != stockfish || !stockfishAvailable())) useStockfish(difficultyLimits);
+        SearchLimits limits = aiSearchLimits();
+        ResultCache.Result cached = isCacheable() ? resultCache.probe(position.getKey(), engineId(engine),
+                difficultyLevel, limits, position.getSideToMove()) : null;
+        if (cached != null) {
+            move = turnState.findUciMove(Move.toUci(cached.bestMove()));
+            // A move that is not legal here means two positions share a key: search instead
+            if (move != Move.NONE) {
+                synchronized (latestInfo) {
+                    cached.copyTo(latestInfo);
+                }
+                paintAnalysis();
+                applyAIMoveLater(move);
+                return;
+            }
+        }
+        searchAIMove(engine, limits);
+    }
+
+    // The difficulty's budget plus both clocks as they stand now
+    private SearchLimits aiSearchLimits() {
+        long increment = gameClock.getIncrementMillis();
+        return difficultyLimits.withClocks(gameClock.remainingMillis(Position.WHITE),
+                gameClock.remainingMillis(Position.BLACK), increment, increment);
+    }
+
+    // The key holds neither the game's earlier positions nor the halfmove clock; a search that can see
+    // a repetition or the fifty-move rule is neither answered from the cache nor stored in it
+    private boolean isCacheable() {
+        return position.repetitionCount() == 0 && position.getHalfmoveClock() < CACHE_MAX_HALFMOVE_CLOCK;
+    }
+
+    private int engineId(ChessEngine searcher) {
+        return (searcher == builtInEngine) ? ResultCache.BUILT_IN : ResultCache.STOCKFISH;
+    }
+
+    // A book or cached move is known at once, but makeAIMove may be running inside an animation
+    // pulse, where the game-over dialog it can lead to cannot block; it is played on the next pulse
+    // and, like a search, is dropped if the game is reset first
+    private void applyAIMoveLater(int move) {
+        CompletableFuture<String> request = CompletableFuture.completedFuture(Move.toUci(move));
+        pendingAIMove = request;
+        pendingAIEngine = null;
+        Platform.runLater(() -> {
+            if (pendingAIMove != request) return;
+            pendingAIMove = null;
+            if (!isGameOver()) applyAIMove(move);
+        });
+    }
+
+    // The search runs on the engine's thread; only its answer comes back to the FX thread
+    private void searchAIMove(ChessEngine searcher, SearchLimits limits) {
+        long key = position.getKey();
+        int side = position.getSideToMove();
+        boolean cacheable = isCacheable();
+        int level = difficultyLevel;
+        CompletableFuture<String> request = searcher.getBestMoveAsync(position, limits);
+        pendingAIMove = request;
+        pendingAIEngine = searcher;
+        request.whenComplete((uci, error) -> Platform.runLater(() -> {
+            if (pendingAIMove != request) return;
+            pendingAIMove = null;
+            pendingAIEngine = null;
+            if (error != null) error.printStackTrace();
+            int best = (error == null) ? turnState.findUciMove(uci) : Move.NONE;
+            if (best == Move.NONE && searcher != builtInEngine) {
+                // Stockfish failed even after a restart; the built-in engine answers rather than the game stalling
+                System.err.println("Stockfish returned no move; the built-in engine plays this one");
+                searchAIMove(builtInEngine, aiSearchLimits());
+                return;
+            }
+            if (best != Move.NONE && cacheable) {
+                synchronized (latestInfo) {
+                    resultCache.store(key, engineId(searcher), level, limits, side, best, latestInfo);
+                }
+            }
+            if (!isGameOver()) applyAIMove(best);
+        }));
+    }
+
+    private void applyAIMove(int move) {
+        if (move != Move.NONE) {
+            playMove(move);
             updateCheckStatus();
             chessBoard.draw();
         }
     }
 
-    private boolean movePiece(int startRow, int startCol, int endRow, int endCol, char promotionType) {
-        ChessPiece piece = board[startRow][startCol];
-        if (piece == null) return false;
-        boolean isWhitePiece = piece.color == Color.WHITE;
-        if ((whiteTurn && !isWhitePiece) || (!whiteTurn && isWhitePiece)) return false;
-        
-        if (piece instanceof King && Math.abs(startCol - endCol) == 2) {
-            if (!canCastle(startRow, startCol, endRow, endCol)) return false;
-            board[endRow][endCol] = board[startRow][startCol];
-            board[startRow][startCol] = null;
-            board[endRow][endCol].row = endRow;
-            board[endRow][endCol].col = endCol;
-            int rookStartCol = (endCol == 2) ? 0 : 7;
-            int rookEndCol = (endCol == 2) ? 3 : 5;
-            board[endRow][rookEndCol] = board[endRow][rookStartCol];
-            board[endRow][rookStartCol] = null;
-            board[endRow][rookEndCol].row = endRow;
-            board[endRow][rookEndCol].col = rookEndCol;
-            updateKingPosition(piece.color, endRow, endCol);
-            castlingRights.markKingMoved(piece.color);
-            castlingRights.markRookMoved(piece.color, rookStartCol == 0);
-            switchTurn();
-            return true;
+    // Called on the engine's thread for every info line; only the main line with a score is shown
+    private void onEngineInfo(UciInfo info) {
+        if (!info.hasScore || info.multiPv != 1 || info.pvLength == 0) return;
+        synchronized (latestInfo) {
+            latestInfo.copyFrom(info);
         }
-        
-        if (!isValidMoveWithoutCheckTest(startRow, startCol, endRow, endCol)) return false;
-        
-        ChessPiece capturedPiece = board[endRow][endCol];
-        board[endRow][endCol] = piece;
-        board[startRow][startCol] = null;
-        piece.row = endRow;
-        piece.col = endCol;
-        
-        boolean isKing = piece instanceof King;
-        int[] originalKingPos = null;
-        if (isKing) {
-            originalKingPos = isWhitePiece ? whiteKingPos.clone() : blackKingPos.clone();
-            updateKingPosition(piece.color, endRow, endCol);
+        if (analysisRefreshPending.compareAndSet(false, true)) {
+            Platform.runLater(analysisRefresh);
         }
-        
-        boolean kingInCheck = isKingInCheck(piece.color);
-        if (kingInCheck) {
-            board[startRow][startCol] = piece;
-            board[endRow][endCol] = capturedPiece;
-            piece.row = startRow;
-            piece.col = startCol;
-            if (isKing) {
-                if (isWhitePiece) whiteKingPos = originalKingPos;
-                else blackKingPos = originalKingPos;
+    }
+
+    private void refreshAnalysis() {
+        analysisRefreshPending.set(false);
+        // Lines still queued from a cancelled search must not repaint the new game
+        if (pendingAIMove == null) return;
+        paintAnalysis();
+    }
+
+    private void paintAnalysis() {
+        synchronized (latestInfo) {
+            // Engine scores are from the AI's side; the bar always shows White's share
+            int sign = aiIsBlack ? -1 : 1;
+            double whiteShare;
+            int score = sign * latestInfo.score;
+            if (latestInfo.mate) {
+                whiteShare = (score > 0) ? 1.0 : 0.0;
+            } else {
+                whiteShare = 1.0 / (1.0 + Math.pow(10.0, -score / 400.0));
             }
-            return false;
+            analysisText.setLength(0);
+            appendScore(analysisText, latestInfo, sign);
+            analysisText.append("   depth ").append(latestInfo.depth);
+            if (latestInfo.selDepth > 0) analysisText.append('/').append(latestInfo.selDepth);
+            if (latestInfo.nps > 0) analysisText.append("   ").append(latestInfo.nps / 1000).append(" knps");
+            evalBar.setProgress(whiteShare);
+            evalLabel.setText(analysisText.toString());
+            analysisText.setLength(0);
+            latestInfo.appendPv(analysisText);
+            pvLabel.setText(analysisText.toString());
         }
-        
-        if (piece instanceof King) {
-            castlingRights.markKingMoved(piece.color);
-        } else if (piece instanceof Rook) {
-            if (startRow == (isWhitePiece ? 7 : 0)) {
-                castlingRights.markRookMoved(piece.color, startCol == 0);
+    }
+
+    // Engine resources from engine.properties, or the file named by -Dchess.engine.config
+    private EngineConfig loadEngineConfig() {
+        Path configPath = Paths.get(System.getProperty("chess.engine.config", "engine.properties"));
+        try {
+            return EngineConfig.load(configPath);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return EngineConfig.autoSized();
+        }
+    }
+
+    // Analysis runs only while the human is to move in a live game; any earlier analysis is stopped
+    private void updateAnalysisMode() {
+        stopAnalysis();
+        if (!analysisCheckBox.isSelected() || analysisCheckBox.isDisabled() || isAITurn() || isGameOver()) {
+            return;
+        }
+        analysisSideToMove = position.getSideToMove();
+        int id = ++analysisId;
+        synchronized (multiPvLines) {
+            for (UciInfo line : multiPvLines) line.clear();
+        }
+        CompletableFuture<EnginePool.Lease> request = enginePool.lease();
+        analysisLease = request;
+        request.whenComplete((lease, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                // Stockfish is not installed or would not start, so analysis is switched off
+                if (analysisLease == request) analysisLease = null;
+                stockfishMissing = true;
+                updateAnalysisAvailability();
+                return;
+            }
+            // Superseded (a move was made, analysis switched off) while the pool was finding an engine
+            if (analysisLease != request) {
+                lease.close();
+                return;
             }
+            lease.engine().analyzeAsync(position, info -> onAnalysisInfo(info, id))
+                    .whenComplete((done, failure) -> lease.close());
+        }));
+    }
+
+    // The engine goes back to the pool once its search has drained after the stop
+    private void stopAnalysis() {
+        if (analysisLease == null) return;
+        analysisLease.thenAccept(lease -> lease.engine().stop());
+        analysisLease = null;
+        for (Label label : multiPvLabels) label.setText("");
+    }
+
+    // Engine thread: keeps the newest line per MultiPV slot and coalesces repaints like onEngineInfo
+    private void onAnalysisInfo(UciInfo info, int id) {
+        if (id != analysisId || !info.hasScore || info.pvLength == 0 || info.multiPv < 1 || info.multiPv > multiPvLines.length) return;
+        synchronized (multiPvLines) {
+            multiPvLines[info.multiPv - 1].copyFrom(info);
         }
-        
-        if (piece instanceof Pawn && (endRow == 0 || endRow == 7)) {
-            if (promotionType != ' ') {
-                board[endRow][endCol] = createPromotionPiece(promotionType, endRow, endCol, piece.color);
-            } else {
-                board[endRow][endCol] = new Queen(endRow, endCol, piece.color);
+        if (multiPvRefreshPending.compareAndSet(false, true)) {
+            Platform.runLater(multiPvRefresh);
+        }
+    }
+
+    private void refreshMultiPv() {
+        multiPvRefreshPending.set(false);
+        if (analysisLease == null) return;
+        // Scores are from the analysed side; shown, like the bar, from White's side
+        int sign = (analysisSideToMove == Position.BLACK) ? -1 : 1;
+        synchronized (multiPvLines) {
+            for (int i = 0; i < multiPvLines.length; i++) {
+                UciInfo line = multiPvLines[i];
+                if (line.pvLength == 0) continue;
+                analysisText.setLength(0);
+                analysisText.append(i + 1).append(". ");
+                appendScore(analysisText, line, sign);
+                analysisText.append("  d").append(line.depth).append("  ");
+                line.appendPv(analysisText);
+                multiPvLabels[i].setText(analysisText.toString());
             }
         }
-        
-        switchTurn();
+    }
+
+    // "+0.35" or "M3"/"-M3", from the side given by sign (1 = the engine's side to move)
+    private static void appendScore(StringBuilder sb, UciInfo info, int sign) {
+        int score = sign * info.score;
+        if (info.mate) {
+            sb.append(score > 0 ? "M" : "-M").append(Math.abs(score));
+            return;
+        }
+        sb.append(score >= 0 ? "+" : "-").append(Math.abs(score) / 100).append('.');
+        int hundredths = Math.abs(score) % 100;
+        if (hundredths < 10) sb.append('0');
+        sb.append(hundredths);
+    }
+
+    private void clearAnalysis() {
+        evalBar.setProgress(0.5);
+        evalLabel.setText("");
+        pvLabel.setText("");
+    }
+
+    // Drops the outstanding request and tells the engine searching for it to stop; that may be the
+    // built-in fallback, or a Stockfish process the pool has since replaced
+    private void cancelAIMove() {
+        if (pendingAIMove == null) return;
+        pendingAIMove.cancel(false);
+        pendingAIMove = null;
+        if (pendingAIEngine != null) pendingAIEngine.stop();
+        pendingAIEngine = null;
+    }
+
+    private boolean movePiece(int startRow, int startCol, int endRow, int endCol, char promotionType) {
+        if (!isSideToMovePiece(startRow * SIZE + startCol)) return false;
+
+        int move = turnState.findMove(startRow * SIZE + startCol, endRow * SIZE + endCol, promotionPieceType(promotionType));
+        if (move == Move.NONE) return false;
+        playMove(move);
         return true;
     }
 
+    private void playMove(int move) {
+        lastMoveSquares = (1L << Move.from(move)) | (1L << Move.to(move));
+        chessBoard.animateMove(move);
+        position.makeMove(move);
+        gameClock.press();
+        turnState.update(position);
+        syncBoardFromPosition();
+        switchTurn();
+    }
+
     private void switchTurn() {
         whiteTurn = !whiteTurn;
         statusLabel.setText(whiteTurn ? "White's turn" : "Black's turn");
         if (playingAgainstAI && 
             ((whiteTurn && !aiIsBlack) || (!whiteTurn && aiIsBlack))) {
-            Timeline timeline = new Timeline(new KeyFrame(
-                Duration.millis(500),
-                ae -> makeAIMove()));
-            timeline.play();
+            // The engine starts once the move just played has finished sliding into place
+            chessBoard.whenIdle(this::makeAIMove);
         }
+        updateAnalysisMode();
     }
 
+    // Reads the per-ply TurnState; nothing here regenerates moves
     private void updateCheckStatus() {
-        whiteKingInCheck = isKingInCheck(Color.WHITE);
-        blackKingInCheck = isKingInCheck(Color.BLACK);
+        boolean inCheck = turnState.isInCheck();
+        whiteKingInCheck = inCheck && turnState.getSideToMove() == Position.WHITE;
+        blackKingInCheck = inCheck && turnState.getSideToMove() == Position.BLACK;
         kingFlashAnimation.stop();
-        if (whiteKingInCheck || blackKingInCheck) {
+        if (inCheck) {
             kingFlashAnimation.play();
-            boolean isCheckmate = isCheckmate(whiteKingInCheck ? Color.WHITE : Color.BLACK);
-            if (isCheckmate) {
+        }
+        if (turnState.getStatus() != TurnState.Status.ONGOING) {
+            gameClock.stop();
+            clockTicker.stop();
+        }
+        switch (turnState.getStatus()) {
+            case CHECKMATE:
                 String winner = whiteKingInCheck ? "Black" : "White";
                 statusLabel.setText("Checkmate! " + winner + " wins!");
                 showGameOverDialog(winner + " wins by checkmate!");
-            } else {
-                statusLabel.setText((whiteKingInCheck ? "White" : "Black") + " is in check!");
-            }
-        } else {
-            boolean whiteStalemate = isStalemate(Color.WHITE);
-            boolean blackStalemate = isStalemate(Color.BLACK);
-            if ((whiteTurn && whiteStalemate) || (!whiteTurn && blackStalemate)) {
+                break;
+            case STALEMATE:
                 statusLabel.setText("Stalemate! Game ends in a draw.");
                 showGameOverDialog("Draw by stalemate!");
-            }
-        }
-    }
-
-    private boolean isCheckmate(Color kingColor) {
-        if (!isKingInCheck(kingColor)) return false;
-        for (int startRow = 0; startRow < SIZE; startRow++) {
-            for (int startCol = 0; startCol < SIZE; startCol++) {
-                ChessPiece piece = board[startRow][startCol];
-                if (piece != null && piece.color == kingColor) {
-                    for (int endRow = 0; endRow < SIZE; endRow++) {
-                        for (int endCol = 0; endCol < SIZE; endCol++) {
-                            if (startRow == endRow && startCol == endCol) continue;
-                            if (!isValidMoveWithoutCheckTest(startRow, startCol, endRow, endCol)) continue;
-                            ChessPiece capturedPiece = board[endRow][endCol];
-                            int originalRow = piece.row;
-                            int originalCol = piece.col;
-                            board[endRow][endCol] = piece;
-                            board[startRow][startCol] = null;
-                            piece.row = endRow;
-                            piece.col = endCol;
-                            int[] originalKingPos = null;
-                            if (piece instanceof King) {
-                                originalKingPos = (kingColor == Color.WHITE) ? whiteKingPos.clone() : blackKingPos.clone();
-                                updateKingPosition(kingColor, endRow, endCol);
-                            }
-                            boolean stillInCheck = isKingInCheck(kingColor);
-                            board[startRow][startCol] = piece;
-                            board[endRow][endCol] = capturedPiece;
-                            piece.row = originalRow;
-                            piece.col = originalCol;
-                            if (piece instanceof King) {
-                                if (kingColor == Color.WHITE) whiteKingPos = originalKingPos;
-                                else blackKingPos = originalKingPos;
-                            }
-                            if (!stillInCheck) return false;
-                        }
-                    }
+                break;
+            case THREEFOLD_REPETITION:
+                statusLabel.setText("Threefold repetition! Game ends in a draw.");
+                showGameOverDialog("Draw by threefold repetition!");
+                break;
+            case FIFTY_MOVE_RULE:
+                statusLabel.setText("Fifty-move rule! Game ends in a draw.");
+                showGameOverDialog("Draw by the fifty-move rule!");
+                break;
+            default:
+                if (inCheck) {
+                    statusLabel.setText((whiteKingInCheck ? "White" : "Black") + " is in check!");
                 }
-            }
+                break;
         }
-        return true;
     }
 
-    private boolean isStalemate(Color color) {
-        if (isKingInCheck(color)) return false;
-        for (int startRow = 0; startRow < SIZE; startRow++) {
-            for (int startCol = 0; startCol < SIZE; startCol++) {
-                ChessPiece piece = board[startRow][startCol];
-                if (piece != null && piece.color == color) {
-                    for (int endRow = 0; endRow < SIZE; endRow++) {
-                        for (int endCol = 0; endCol < SIZE; endCol++) {
-                            if (startRow == endRow && startCol == endCol) continue;
-                            if (!isValidMoveWithoutCheckTest(startRow, startCol, endRow, endCol)) continue;
-                            ChessPiece capturedPiece = board[endRow][endCol];
-                            board[endRow][endCol] = piece;
-                            board[startRow][startCol] = null;
-                            int originalRow = piece.row;
-                            int originalCol = piece.col;
-                            piece.row = endRow;
-                            piece.col = endCol;
-                            int[] originalKingPos = null;
-                            if (piece instanceof King) {
-                                originalKingPos = (color == Color.WHITE) ? whiteKingPos.clone() : blackKingPos.clone();
-                                updateKingPosition(color, endRow, endCol);
-                            }
-                            boolean kingInCheck = isKingInCheck(color);
-                            board[startRow][startCol] = piece;
-                            board[endRow][endCol] = capturedPiece;
-                            piece.row = originalRow;
-                            piece.col = originalCol;
-                            if (piece instanceof King) {
-                                if (color == Color.WHITE) whiteKingPos = originalKingPos;
-                                else blackKingPos = originalKingPos;
-                            }
-                            if (!kingInCheck) return false;
-                        }
-                    }
-                }
-            }
-        }
-        return true;
+    // Checkmate, a draw, or a flag fall; no more moves are taken from either side
+    private boolean isGameOver() {
+        return flagFallen || turnState.getStatus() != TurnState.Status.ONGOING;
     }
 
     private void showGameOverDialog(String message) {
@@ -870,19 +1231,20 @@ public class ChessGame extends Application {
             if (result.get() == playAgainButton) {
                 resetGame();
             } else {
-                System.exit(0);
+                // Exits the way closing the window does, so stop() still reports and cleans up
+                Platform.exit();
             }
         }
     }
 
     private void handleSquareClicked(int row, int col) {
+        if (isGameOver()) return;
         if (playingAgainstAI && 
             ((whiteTurn && !aiIsBlack) || (!whiteTurn && aiIsBlack))) {
             return;
         }
         if (selectedRow == -1 && selectedCol == -1) {
-            ChessPiece piece = board[row][col];
-            if (piece != null && ((whiteTurn && piece.color == Color.WHITE) || (!whiteTurn && piece.color == Color.BLACK))) {
+            if (isSideToMovePiece(row * SIZE + col)) {
                 selectedRow = row;
                 selectedCol = col;
                 calculateLegalMoves(row, col);
@@ -891,29 +1253,27 @@ public class ChessGame extends Application {
         } else {
             if (row == selectedRow && col == selectedCol) {
                 selectedRow = selectedCol = -1;
-                legalMoveCache.clear();
+                legalTargets = 0L;
                 chessBoard.draw();
             } else {
-                ChessPiece piece = board[selectedRow][selectedCol];
-                boolean isPawn = piece instanceof Pawn;
+                boolean isPawn = Position.typeOf(position.pieceAt(selectedRow * SIZE + selectedCol)) == Position.PAWN;
                 boolean isPawnPromotion = isPawn && (row == 0 || row == 7);
-                if (isPawnPromotion && legalMoveCache.contains(new Point2D(row, col))) {
+                if (isPawnPromotion && (legalTargets & (1L << (row * SIZE + col))) != 0) {
                     showPromotionDialog(selectedRow, selectedCol, row, col);
                 } else {
                     if (movePiece(selectedRow, selectedCol, row, col, ' ')) {
                         selectedRow = selectedCol = -1;
-                        legalMoveCache.clear();
+                        legalTargets = 0L;
                         updateCheckStatus();
                         chessBoard.draw();
                     } else {
-                        ChessPiece newPiece = board[row][col];
-                        if (newPiece != null && ((whiteTurn && newPiece.color == Color.WHITE) || (!whiteTurn && newPiece.color == Color.BLACK))) {
+                        if (isSideToMovePiece(row * SIZE + col)) {
                             selectedRow = row;
                             selectedCol = col;
                             calculateLegalMoves(row, col);
                         } else {
                             selectedRow = selectedCol = -1;
-                            legalMoveCache.clear();
+                            legalTargets = 0L;
                         }
                         chessBoard.draw();
                     }
@@ -922,49 +1282,13 @@ public class ChessGame extends Application {
         }
     }
 
+    private boolean isSideToMovePiece(int sq) {
+        int piece = position.pieceAt(sq);
+        return piece != Position.EMPTY && Position.colorOf(piece) == position.getSideToMove();
+    }
+
     private void calculateLegalMoves(int row, int col) {
-        legalMoveCache.clear();
-        ChessPiece piece = board[row][col];
-        if (piece == null) return;
-        for (int endRow = 0; endRow < SIZE; endRow++) {
-            for (int endCol = 0; endCol < SIZE; endCol++) {
-                if (row == endRow && col == endCol) continue;
-                if (isValidMoveWithoutCheckTest(row, col, endRow, endCol)) {
-                    ChessPiece capturedPiece = board[endRow][endCol];
-                    board[endRow][endCol] = piece;
-                    board[row][col] = null;
-                    int originalRow = piece.row;
-                    int originalCol = piece.col;
-                    piece.row = endRow;
-                    piece.col = endCol;
-                    int[] originalKingPos = null;
-                    if (piece instanceof King) {
-                        originalKingPos = (piece.color == Color.WHITE) ? whiteKingPos.clone() : blackKingPos.clone();
-                        updateKingPosition(piece.color, endRow, endCol);
-                    }
-                    boolean kingInCheck = isKingInCheck(piece.color);
-                    board[row][col] = piece;
-                    board[endRow][endCol] = capturedPiece;
-                    piece.row = originalRow;
-                    piece.col = originalCol;
-                    if (piece instanceof King) {
-                        if (piece.color == Color.WHITE) whiteKingPos = originalKingPos;
-                        else blackKingPos = originalKingPos;
-                    }
-                    if (!kingInCheck) {
-                        legalMoveCache.add(new Point2D(endRow, endCol));
-                    }
-                }
-            }
-        }
-        if (piece instanceof King) {
-            if (canCastle(row, col, row, col + 2)) {
-                legalMoveCache.add(new Point2D(row, col + 2));
-            }
-            if (canCastle(row, col, row, col - 2)) {
-                legalMoveCache.add(new Point2D(row, col - 2));
-            }
-        }
+        legalTargets = turnState.targetsFrom(row * SIZE + col);
     }
 
     private void showPromotionDialog(int startRow, int startCol, int endRow, int endCol) {
@@ -984,24 +1308,103 @@ public class ChessGame extends Application {
             else if (choice == bishopButton) promotionType = 'b';
             else if (choice == knightButton) promotionType = 'n';
         }
+        // The clock keeps running while the dialog is open
+        if (isGameOver()) return;
         if (movePiece(startRow, startCol, endRow, endCol, promotionType)) {
             selectedRow = selectedCol = -1;
-            legalMoveCache.clear();
+            legalTargets = 0L;
             updateCheckStatus();
             chessBoard.draw();
         }
     }
 
+    // Stacked layers: the squares and coordinates (an image rasterized once per theme and
+    // orientation, then cached), the highlights, the pieces and, on top, the pieces in motion. Each
+    // layer repaints only the squares whose content changed, so the check flash or a selection never
+    // touches the pieces and a move never touches the squares.
     private class ChessBoard extends StackPane {
-        private Canvas canvas;
-        private GraphicsContext gc;
+        private static final long ANIMATION_NANOS = 250_000_000L;
+        // One pulse at 60 Hz; a longer gap between pulses counts as dropped frames
+        private static final long FRAME_NANOS = 16_666_667L;
+        private static final int MAX_SPRITES = 3;   // mover, castling rook, captured piece
+        // Frames drawn before -Dchess.checkAllocations starts counting: caches and JIT settle first
+        private static final int ALLOCATION_WARMUP_FRAMES = 20;
+        // Highlight bits of a square on the overlay layer
+        private static final int SELECTED = 1;
+        private static final int TARGET = 1 << 1;
+        private static final int CAPTURE_TARGET = 1 << 2;
+        private static final int CHECK_FLASH = 1 << 3;
+        private static final int LAST_MOVE = 1 << 4;
+        // Coordinate labels by file and by rank, so painting them allocates nothing
+        private final String[] fileLabels = { "a", "b", "c", "d", "e", "f", "g", "h" };
+        private final String[] rankLabels = { "1", "2", "3", "4", "5", "6", "7", "8" };
+
+        private final ImageView background = new ImageView();
+        // Rasterized backgrounds by theme: unflipped, then flipped
+        private final Map<ChessTheme, Image[]> backgrounds = new HashMap<>();
+        // Square size and output scale the cached backgrounds were rasterized for
+        private int backgroundSize;
+        private double backgroundScale;
+        private Canvas overlayLayer;
+        private GraphicsContext overlay;
+        private Canvas pieceLayer;
+        private GraphicsContext pieces;
+        private Canvas motionLayer;
+        private GraphicsContext motion;
         private boolean highlightKing = false;
+        // The move being animated: pieces sliding from one square to another, or fading out where
+        // they were captured. Their destinations stay empty on the piece layer until it ends.
+        private final int[] spritePiece = new int[MAX_SPRITES];
+        private final int[] spriteFrom = new int[MAX_SPRITES];
+        private final int[] spriteTo = new int[MAX_SPRITES];
+        private final boolean[] spriteFades = new boolean[MAX_SPRITES];
+        // Where each sprite was drawn last pulse, in layout units; only these squares are cleared
+        private final double[] drawnX = new double[MAX_SPRITES];
+        private final double[] drawnY = new double[MAX_SPRITES];
+        private int spriteCount;
+        private long hiddenSquares;
+        private boolean animating;
+        private long animationStart;   // pulse time of the first frame, or -1 before it
+        private long lastPulse;
+        private Runnable afterAnimation;
+        private final AnimationTimer animationTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                pulse(now);
+            }
+        };
+        private long animationFrames;
+        private long renderNanos;
+        private long worstRenderNanos;
+        private long droppedFrames;
+        // What each square of a layer showed when last painted: piece code + 1 (0 for empty), and
+        // highlight bits
+        private final int[] paintedPieces = new int[SIZE * SIZE];
+        private final int[] paintedOverlay = new int[SIZE * SIZE];
+        private boolean repaintPieces = true;
+        private boolean repaintOverlay = true;
+        private long frames;
+        private long squaresRepainted;
+        // -Dchess.checkAllocations: each incremental frame's allocation on the FX thread is measured,
+        // and any frame past the warm-up that allocated is reported as it happens and again on exit
+        private final com.sun.management.ThreadMXBean allocationProbe = allocationProbe();
+        private long checkedFrames;
+        private long allocatingFrames;
+        private long worstFrameBytes;
         
         ChessBoard() {
-            canvas = new Canvas(SIZE * SQUARE_SIZE, SIZE * SQUARE_SIZE);
-            gc = canvas.getGraphicsContext2D();
-            getChildren().add(canvas);
-            canvas.setOnMouseClicked(this::handleMouseClick);
+            overlayLayer = new Canvas(SIZE * SQUARE_SIZE, SIZE * SQUARE_SIZE);
+            overlay = overlayLayer.getGraphicsContext2D();
+            pieceLayer = new Canvas(SIZE * SQUARE_SIZE, SIZE * SQUARE_SIZE);
+            pieces = pieceLayer.getGraphicsContext2D();
+            background.setFitWidth(SIZE * SQUARE_SIZE);
+            background.setFitHeight(SIZE * SQUARE_SIZE);
+            motionLayer = new Canvas(SIZE * SQUARE_SIZE, SIZE * SQUARE_SIZE);
+            motion = motionLayer.getGraphicsContext2D();
+            motionLayer.setMouseTransparent(true);
+            getChildren().addAll(background, overlayLayer, pieceLayer, motionLayer);
+            // The piece layer takes the clicks for all of them
+            pieceLayer.setOnMouseClicked(this::handleMouseClick);
             setAlignment(Pos.CENTER);
             
             // Add border to make the board stand out
@@ -1021,6 +1424,8 @@ public class ChessGame extends Application {
         }
         
         private void handleMouseClick(MouseEvent event) {
+            // A click lands on the finished position
+            finishAnimation();
             int col = (int) (event.getX() / SQUARE_SIZE);
             int row = (int) (event.getY() / SQUARE_SIZE);
             int logicalRow = boardFlipped ? (SIZE - 1 - row) : row;
@@ -1030,71 +1435,382 @@ public class ChessGame extends Application {
             }
         }
         
+        // Repaints every layer: orientation or piece images changed
+        void redrawAll() {
+            clearMotion();
+            repaintPieces = true;
+            changeTheme();
+        }
+        
+        // The square size changed: every layer takes the new size at once, scaling the images
+        // rasterized for the old one until rasterizeBoard() replaces them
+        void resizeSquares() {
+            double side = SIZE * SQUARE_SIZE;
+            overlayLayer.setWidth(side);
+            overlayLayer.setHeight(side);
+            pieceLayer.setWidth(side);
+            pieceLayer.setHeight(side);
+            motionLayer.setWidth(side);
+            motionLayer.setHeight(side);
+            clearMotion();
+            background.setFitWidth(side);
+            background.setFitHeight(side);
+            repaintPieces = repaintOverlay = true;
+            draw();
+        }
+        
+        // New piece images
+        void redrawPieces() {
+            repaintPieces = true;
+            draw();
+        }
+        
+        // Swaps in the new theme's background; only the highlights, whose colors are per theme, repaint
+        void changeTheme() {
+            background.setImage(backgroundFor(currentTheme, boardFlipped));
+            repaintOverlay = true;
+            draw();
+        }
+        
         void draw() {
-            gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
-            gc.setFill(currentTheme.getBoardBorder());
-            double borderSize = SQUARE_SIZE * 0.1;
-            gc.fillRect(-borderSize, -borderSize, 
-                        SIZE * SQUARE_SIZE + 2 * borderSize, 
-                        SIZE * SQUARE_SIZE + 2 * borderSize);
+            boolean allPieces = repaintPieces;
+            boolean allOverlay = repaintOverlay;
+            repaintPieces = repaintOverlay = false;
+            long threadId = Thread.currentThread().getId();
+            long allocatedBefore = (allocationProbe != null) ? allocationProbe.getThreadAllocatedBytes(threadId) : 0L;
+            if (background.getImage() == null) background.setImage(backgroundFor(currentTheme, boardFlipped));
+            if (allPieces) pieces.clearRect(0, 0, pieceLayer.getWidth(), pieceLayer.getHeight());
+            if (allOverlay) overlay.clearRect(0, 0, overlayLayer.getWidth(), overlayLayer.getHeight());
+            int repainted = 0;
             for (int row = 0; row < SIZE; row++) {
                 for (int col = 0; col < SIZE; col++) {
-                    int visualRow = boardFlipped ? (SIZE - 1 - row) : row;
-                    int visualCol = boardFlipped ? (SIZE - 1 - col) : col;
-                    boolean isLight = (row + col) % 2 == 0;
-                    gc.setFill(isLight ? currentTheme.getLightSquare() : currentTheme.getDarkSquare());
-                    Color textColor = isLight ? currentTheme.getDarkSquare() : currentTheme.getLightSquare();
-                    gc.setFill(textColor);
-                    if (row == selectedRow && col == selectedCol) {
-                        gc.setFill(Color.YELLOW);
+                    int sq = row * SIZE + col;
+                    int piece = ((hiddenSquares & (1L << sq)) != 0) ? Position.EMPTY : position.pieceAt(sq);
+                    if (allPieces || piece + 1 != paintedPieces[sq]) {
+                        paintedPieces[sq] = piece + 1;
+                        drawPiece(row, col, piece);
+                        repainted++;
                     }
-                    if (legalMoveCache.contains(new Point2D(row, col))) {
-                        if (currentTheme.getName().equalsIgnoreCase("Blue")) {
-                            gc.setFill(Color.GOLD);
-                        } else {
-                            gc.setFill(Color.LIGHTBLUE);
-                        }
-                    }
-                    if (highlightKing && board[row][col] instanceof King) {
-                        if ((board[row][col].color == Color.WHITE && whiteKingInCheck) ||
-                            (board[row][col].color == Color.BLACK && blackKingInCheck)) {
-                            gc.setFill(Color.RED);
-                        }
-                    }
-                    gc.fillRect(visualCol * SQUARE_SIZE, visualRow * SQUARE_SIZE, SQUARE_SIZE, SQUARE_SIZE);
-                    if (board[row][col] != null) {
-                        ChessPiece piece = board[row][col];
-                        String colorName = piece.color == Color.WHITE ? "White" : "Black";
-                        String pieceName = "";
-                        if (piece instanceof Pawn) pieceName = "Pawn";
-                        else if (piece instanceof Rook) pieceName = "Rook";
-                        else if (piece instanceof Knight) pieceName = "Knight";
-                        else if (piece instanceof Bishop) pieceName = "Bishop";
-                        else if (piece instanceof Queen) pieceName = "Queen";
-                        else if (piece instanceof King) pieceName = "King";
-                        Image pieceImage = pieceImages.get(pieceName + colorName);
-                        if (pieceImage != null) {
-                            gc.drawImage(pieceImage, visualCol * SQUARE_SIZE, visualRow * SQUARE_SIZE);
-                        } else {
-                            piece.draw(gc, visualCol * SQUARE_SIZE, visualRow * SQUARE_SIZE);
-                        }
+                    int marks = highlightsOf(row, col, piece);
+                    if (allOverlay || marks != paintedOverlay[sq]) {
+                        paintedOverlay[sq] = marks;
+                        drawHighlights(row, col, marks);
+                        repainted++;
                     }
+                }
+            }
+            if (repainted > 0) {
+                frames++;
+                squaresRepainted += repainted;
+            }
+            // Full repaints may rasterize a background, so only incremental frames are held to zero
+            if (allocationProbe != null && !allPieces && !allOverlay && frames > ALLOCATION_WARMUP_FRAMES) {
+                long allocated = allocationProbe.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                checkedFrames++;
+                if (allocated > 0) {
+                    allocatingFrames++;
+                    worstFrameBytes = Math.max(worstFrameBytes, allocated);
+                    System.err.println("Board frame allocated " + allocated + " bytes");
+                }
+            }
+        }
+        
+        private com.sun.management.ThreadMXBean allocationProbe() {
+            if (!Boolean.getBoolean("chess.checkAllocations")) return null;
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (!(threads instanceof com.sun.management.ThreadMXBean)) return null;
+            com.sun.management.ThreadMXBean probe = (com.sun.management.ThreadMXBean) threads;
+            return probe.isThreadAllocatedMemorySupported() ? probe : null;
+        }
+        
+        // Incremental frames measured by -Dchess.checkAllocations, and how many of them allocated
+        long getCheckedFrames() {
+            return checkedFrames;
+        }
+        
+        long getAllocatingFrames() {
+            return allocatingFrames;
+        }
+        
+        long getWorstFrameBytes() {
+            return worstFrameBytes;
+        }
+        
+        private Image backgroundFor(ChessTheme theme, boolean flipped) {
+            double scale = outputScale();
+            forgetStaleBackgrounds(SQUARE_SIZE, scale);
+            Image[] images = backgrounds.computeIfAbsent(theme, t -> new Image[2]);
+            int index = flipped ? 1 : 0;
+            if (images[index] == null) images[index] = snapshot(paintBackground(theme, flipped, SQUARE_SIZE, scale));
+            return images[index];
+        }
+        
+        private void forgetStaleBackgrounds(int squareSize, double scale) {
+            if (backgroundMatches(squareSize, scale)) return;
+            backgrounds.clear();
+            backgroundSize = squareSize;
+            backgroundScale = scale;
+        }
+        
+        boolean backgroundMatches(int squareSize, double scale) {
+            return backgroundSize == squareSize && backgroundScale == scale;
+        }
+        
+        // Takes a background painted by rasterizeBoard() for the current size and scale
+        void installBackground(ChessTheme theme, boolean flipped, int squareSize, double scale, Canvas painted) {
+            forgetStaleBackgrounds(squareSize, scale);
+            Image[] images = backgrounds.computeIfAbsent(theme, t -> new Image[2]);
+            images[flipped ? 1 : 0] = snapshot(painted);
+            if (theme == currentTheme && flipped == boardFlipped) background.setImage(images[flipped ? 1 : 0]);
+        }
+        
+        private Image snapshot(Canvas painted) {
+            SnapshotParameters params = new SnapshotParameters();
+            params.setFill(Color.TRANSPARENT);
+            return painted.snapshot(params, null);
+        }
+        
+        // Paints a detached canvas in device pixels; safe on any thread
+        Canvas paintBackground(ChessTheme theme, boolean flipped, int squareSize, double scale) {
+            Canvas canvas = new Canvas(Math.ceil(SIZE * squareSize * scale), Math.ceil(SIZE * squareSize * scale));
+            GraphicsContext gc = canvas.getGraphicsContext2D();
+            gc.scale(scale, scale);
+            gc.setFill(theme.getBoardBorder());
+            gc.fillRect(0, 0, SIZE * squareSize, SIZE * squareSize);
+            for (int row = 0; row < SIZE; row++) {
+                for (int col = 0; col < SIZE; col++) {
+                    int visualRow = flipped ? (SIZE - 1 - row) : row;
+                    int visualCol = flipped ? (SIZE - 1 - col) : col;
+                    boolean isLight = (row + col) % 2 == 0;
+                    gc.setFill(isLight ? theme.getDarkSquare() : theme.getLightSquare());
+                    gc.fillRect(visualCol * squareSize, visualRow * squareSize, squareSize, squareSize);
                     gc.setFill(isLight ? Color.DARKGREEN : Color.BEIGE);
                     if (visualRow == SIZE - 1) {
-                        char file = (char)('a' + (boardFlipped ? (SIZE - 1 - col) : col));
-                        gc.fillText(String.valueOf(file), 
-                                    (visualCol * SQUARE_SIZE) + SQUARE_SIZE - 10, 
-                                    (visualRow * SQUARE_SIZE) + SQUARE_SIZE - 2);
+                        gc.fillText(fileLabels[flipped ? (SIZE - 1 - col) : col], 
+                                    (visualCol * squareSize) + squareSize - 10, 
+                                    (visualRow * squareSize) + squareSize - 2);
                     }
                     if (visualCol == 0) {
-                        int rank = boardFlipped ? (row + 1) : (8 - row);
-                        gc.fillText(String.valueOf(rank), 
-                                    (visualCol * SQUARE_SIZE) + 2, 
-                                    (visualRow * SQUARE_SIZE) + 12);
+                        gc.fillText(rankLabels[flipped ? row : (SIZE - 1 - row)], 
+                                    (visualCol * squareSize) + 2, 
+                                    (visualRow * squareSize) + 12);
                     }
                 }
             }
+            return canvas;
+        }
+        
+        private int highlightsOf(int row, int col, int piece) {
+            int sq = row * SIZE + col;
+            int marks = 0;
+            if (row == selectedRow && col == selectedCol) marks |= SELECTED;
+            if ((legalTargets & (1L << sq)) != 0) marks |= (piece == Position.EMPTY) ? TARGET : CAPTURE_TARGET;
+            if ((lastMoveSquares & (1L << sq)) != 0) marks |= LAST_MOVE;
+            if (highlightKing && piece != Position.EMPTY && Position.typeOf(piece) == Position.KING) {
+                if (Position.colorOf(piece) == Position.WHITE ? whiteKingInCheck : blackKingInCheck) {
+                    marks |= CHECK_FLASH;
+                }
+            }
+            return marks;
+        }
+        
+        // The overlay sits under the pieces, so a filled square reads as the piece's background
+        private void drawHighlights(int row, int col, int marks) {
+            int x = (boardFlipped ? (SIZE - 1 - col) : col) * SQUARE_SIZE;
+            int y = (boardFlipped ? (SIZE - 1 - row) : row) * SQUARE_SIZE;
+            overlay.clearRect(x, y, SQUARE_SIZE, SQUARE_SIZE);
+            Color fill = null;
+            if ((marks & CHECK_FLASH) != 0) fill = currentTheme.getCheckHighlight();
+            else if ((marks & CAPTURE_TARGET) != 0) fill = currentTheme.getTargetHighlight();
+            else if ((marks & SELECTED) != 0) fill = currentTheme.getSelectedHighlight();
+            else if ((marks & LAST_MOVE) != 0) fill = currentTheme.getLastMoveHighlight();
+            if (fill != null) {
+                overlay.setFill(fill);
+                overlay.fillRect(x, y, SQUARE_SIZE, SQUARE_SIZE);
+            }
+            if ((marks & TARGET) != 0) {
+                double dot = SQUARE_SIZE * 0.3;
+                overlay.setFill(currentTheme.getTargetHighlight());
+                overlay.fillOval(x + (SQUARE_SIZE - dot) / 2, y + (SQUARE_SIZE - dot) / 2, dot, dot);
+            }
+        }
+        
+        private void drawPiece(int row, int col, int piece) {
+            int x = (boardFlipped ? (SIZE - 1 - col) : col) * SQUARE_SIZE;
+            int y = (boardFlipped ? (SIZE - 1 - row) : row) * SQUARE_SIZE;
+            pieces.clearRect(x, y, SQUARE_SIZE, SQUARE_SIZE);
+            if (piece == Position.EMPTY) return;
+            if (pieceAtlas != null) {
+                pieceAtlas.draw(pieces, piece, x, y, SQUARE_SIZE);
+            } else {
+                board[row][col].draw(pieces, x, y);
+            }
+        }
+        
+        // Starts sliding move's pieces from the position before it is played. The pieces it moves
+        // disappear from their destinations on the piece layer until the animation ends.
+        void animateMove(int move) {
+            jumpToEnd();
+            if (pieceAtlas == null) return;
+            int from = Move.from(move);
+            int to = Move.to(move);
+            int mover = position.pieceAt(from);
+            spriteCount = 0;
+            if (Move.isCapture(move)) {
+                int victim = Move.isEnPassant(move) ? Position.enPassantVictim(to, Position.colorOf(mover)) : to;
+                addSprite(position.pieceAt(victim), victim, victim, true);
+            }
+            if (Move.isCastling(move)) {
+                int rookFrom = (to > from) ? from + 3 : from - 4;
+                int rookTo = (to > from) ? from + 1 : from - 1;
+                addSprite(position.pieceAt(rookFrom), rookFrom, rookTo, false);
+            }
+            addSprite(mover, from, to, false);
+            animating = true;
+            animationStart = -1;
+            animationTimer.start();
+        }
+        
+        private void addSprite(int piece, int from, int to, boolean fades) {
+            spritePiece[spriteCount] = piece;
+            spriteFrom[spriteCount] = from;
+            spriteTo[spriteCount] = to;
+            spriteFades[spriteCount] = fades;
+            drawnX[spriteCount] = -1;
+            if (!fades) hiddenSquares |= 1L << to;
+            spriteCount++;
+        }
+        
+        // Runs action once no move is animating: after the current animation, or on the next pulse
+        void whenIdle(Runnable action) {
+            if (animating) {
+                afterAnimation = action;
+            } else {
+                Platform.runLater(action);
+            }
+        }
+        
+        // Ends the current animation at once and runs what was waiting for it
+        void finishAnimation() {
+            jumpToEnd();
+            Runnable action = afterAnimation;
+            afterAnimation = null;
+            if (action != null) action.run();
+        }
+        
+        // Ends the current animation at once and forgets what was waiting for it
+        void cancelAnimation() {
+            afterAnimation = null;
+            jumpToEnd();
+        }
+        
+        private void jumpToEnd() {
+            if (!animating) return;
+            animating = false;
+            animationTimer.stop();
+            clearMotion();
+            spriteCount = 0;
+            hiddenSquares = 0L;
+            draw();
+        }
+        
+        // Each pulse places the sprites by the time elapsed, so a late pulse skips ahead rather than
+        // slowing the move down, and touches only the squares the sprites cover
+        private void pulse(long now) {
+            long renderStart = System.nanoTime();
+            if (animationStart < 0) {
+                animationStart = now;
+            } else if (now - lastPulse > FRAME_NANOS * 3 / 2) {
+                droppedFrames += (now - lastPulse) / FRAME_NANOS - 1;
+            }
+            lastPulse = now;
+            double t = (now - animationStart) / (double) ANIMATION_NANOS;
+            if (t >= 1.0) {
+                finishAnimation();
+            } else {
+                double eased = t * t * (3 - 2 * t);
+                for (int i = 0; i < spriteCount; i++) {
+                    if (drawnX[i] >= 0) motion.clearRect(drawnX[i] - 1, drawnY[i] - 1, SQUARE_SIZE + 2, SQUARE_SIZE + 2);
+                }
+                for (int i = 0; i < spriteCount; i++) {
+                    double x = visualX(spriteFrom[i]) + (visualX(spriteTo[i]) - visualX(spriteFrom[i])) * eased;
+                    double y = visualY(spriteFrom[i]) + (visualY(spriteTo[i]) - visualY(spriteFrom[i])) * eased;
+                    motion.setGlobalAlpha(spriteFades[i] ? 1.0 - t : 1.0);
+                    pieceAtlas.draw(motion, spritePiece[i], x, y, SQUARE_SIZE);
+                    drawnX[i] = x;
+                    drawnY[i] = y;
+                }
+                motion.setGlobalAlpha(1.0);
+            }
+            long elapsed = System.nanoTime() - renderStart;
+            animationFrames++;
+            renderNanos += elapsed;
+            worstRenderNanos = Math.max(worstRenderNanos, elapsed);
+        }
+        
+        private double visualX(int sq) {
+            int col = sq % SIZE;
+            return (boardFlipped ? (SIZE - 1 - col) : col) * SQUARE_SIZE;
+        }
+        
+        private double visualY(int sq) {
+            int row = sq / SIZE;
+            return (boardFlipped ? (SIZE - 1 - row) : row) * SQUARE_SIZE;
         }
+        
+        private void clearMotion() {
+            motion.clearRect(0, 0, motionLayer.getWidth(), motionLayer.getHeight());
+            for (int i = 0; i < spriteCount; i++) drawnX[i] = -1;
+        }
+        
+        long getAnimationFrames() {
+            return animationFrames;
+        }
+        
+        double getAverageRenderMillis() {
+            return (animationFrames == 0) ? 0.0 : renderNanos / 1e6 / animationFrames;
+        }
+        
+        double getWorstRenderMillis() {
+            return worstRenderNanos / 1e6;
+        }
+        
+        // Pulses missed while an animation ran, judged against a 60 Hz display
+        long getDroppedFrames() {
+            return droppedFrames;
+        }
+        
+        long getFrameCount() {
+            return frames;
+        }
+        
+        long getSquaresRepainted() {
+            return squaresRepainted;
+        }
+    }
+
+    // Hooks for benchmarks/BoardAllocationCheck, which plays a two-player game by clicking squares
+    void playWithoutAI() {
+        playingAgainstAI = false;
+        cancelAIMove();
+    }
+
+    // A click on the square at row and col of the logical board, as the mouse handler delivers it
+    void clickSquare(int row, int col) {
+        chessBoard.finishAnimation();
+        handleSquareClicked(row, col);
+    }
+
+    long getBoardCheckedFrames() {
+        return chessBoard.getCheckedFrames();
+    }
+
+    long getBoardAllocatingFrames() {
+        return chessBoard.getAllocatingFrames();
+    }
+
+    long getBoardWorstFrameBytes() {
+        return chessBoard.getWorstFrameBytes();
     }
 
     public static void main(String[] args) {
@@ -6,19 +6,33 @@ class ChessTheme {
     private Color lightSquare;
     private Color darkSquare;
     private Color boardBorder;
+    // Resolved once here so painting a square never looks colors up by theme name
+    private Color selectedHighlight;
+    private Color targetHighlight;
+    private Color checkHighlight;
+    private Color lastMoveHighlight;
     
     public static final ChessTheme[] PREDEFINED_THEMES = {
         new ChessTheme("Classic", Color.WHEAT, Color.SADDLEBROWN, Color.BLACK),
-        new ChessTheme("Blue", Color.LIGHTBLUE, Color.DARKBLUE, Color.BLACK),
+        // Light blue targets would vanish on the blue squares
+        new ChessTheme("Blue", Color.LIGHTBLUE, Color.DARKBLUE, Color.BLACK, Color.GOLD),
         new ChessTheme("Green", Color.LIGHTGREEN, Color.DARKGREEN, Color.BLACK),
         new ChessTheme("Gray", Color.LIGHTGRAY, Color.DARKGRAY, Color.BLACK)
     };
     
     public ChessTheme(String name, Color lightSquare, Color darkSquare, Color boardBorder) {
+        this(name, lightSquare, darkSquare, boardBorder, Color.LIGHTBLUE);
+    }
+    
+    public ChessTheme(String name, Color lightSquare, Color darkSquare, Color boardBorder, Color targetHighlight) {
         this.name = name;
         this.lightSquare = lightSquare;
         this.darkSquare = darkSquare;
         this.boardBorder = boardBorder;
+        this.selectedHighlight = Color.YELLOW;
+        this.targetHighlight = targetHighlight;
+        this.checkHighlight = Color.RED;
+        this.lastMoveHighlight = Color.rgb(255, 255, 0, 0.35);
     }
     
     public String getName() {
@@ -37,6 +51,22 @@ class ChessTheme {
         return boardBorder;
     }
     
+    public Color getSelectedHighlight() {
+        return selectedHighlight;
+    }
+    
+    public Color getTargetHighlight() {
+        return targetHighlight;
+    }
+    
+    public Color getCheckHighlight() {
+        return checkHighlight;
+    }
+    
+    public Color getLastMoveHighlight() {
+        return lastMoveHighlight;
+    }
+    
     @Override
     public String toString() {
         return name;
@@ -0,0 +1,87 @@
+package chesspkg;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+// UCI engine resources: which Stockfish executable to run, how many engine processes may run at once,
+// and each one's search threads, hash size and number of analysis lines. Defaults are sized from the
+// machine; a properties file (stockfish, engines, threads, hash, multipv) overrides them.
+final class EngineConfig {
+    static final int MIN_HASH_MB = 16;
+    static final int MAX_HASH_MB = 32768;
+    static final int MAX_MULTI_PV = 10;
+    // One engine plays the game, the other serves analysis
+    static final int DEFAULT_ENGINES = 2;
+
+    final int threads;
+    final int hashMb;
+    final int multiPv;
+    final int engines;
+    final String stockfishPath;   // null to look for Stockfish on PATH
+
+    EngineConfig(int threads, int hashMb, int multiPv, int engines, String stockfishPath) {
+        this.threads = Math.max(1, threads);
+        this.hashMb = Math.max(MIN_HASH_MB, Math.min(hashMb, MAX_HASH_MB));
+        this.multiPv = Math.max(1, Math.min(multiPv, MAX_MULTI_PV));
+        this.engines = Math.max(1, engines);
+        this.stockfishPath = stockfishPath;
+    }
+
+    static EngineConfig autoSized() {
+        return autoSized(DEFAULT_ENGINES);
+    }
+
+    // All cores but one, which stays free for the UI, and an eighth of the memory the JVM heap
+    // cannot claim, split between the engines; hash is rounded down to a power of two as Stockfish prefers
+    static EngineConfig autoSized(int engines) {
+        engines = Math.max(1, engines);
+        int threads = (Runtime.getRuntime().availableProcessors() - 1) / engines;
+        long freeForEngines = physicalMemoryBytes() - Runtime.getRuntime().maxMemory();
+        long hashMb = Math.max(MIN_HASH_MB, freeForEngines / 8 / engines / (1024 * 1024));
+        return new EngineConfig(threads, (int) Math.min(Long.highestOneBit(hashMb), MAX_HASH_MB), 3, engines, null);
+    }
+
+    // Defaults sized for the configured number of engines, with any keys present in the file applied on top
+    static EngineConfig load(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) return autoSized();
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        try {
+            EngineConfig defaults = autoSized(intProperty(properties, "engines", DEFAULT_ENGINES));
+            return new EngineConfig(
+                    intProperty(properties, "threads", defaults.threads),
+                    intProperty(properties, "hash", defaults.hashMb),
+                    intProperty(properties, "multipv", defaults.multiPv),
+                    intProperty(properties, "engines", defaults.engines),
+                    properties.getProperty("stockfish", defaults.stockfishPath));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid engine setting in " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static int intProperty(Properties properties, String name, int fallback) {
+        String value = properties.getProperty(name);
+        return (value == null) ? fallback : Integer.parseInt(value.trim());
+    }
+
+    // getTotalMemorySize replaces this only from Java 14 on
+    @SuppressWarnings("deprecation")
+    private static long physicalMemoryBytes() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+        }
+        return 0L;
+    }
+
+    @Override
+    public String toString() {
+        return engines + " engines (" + (stockfishPath == null ? "from PATH" : stockfishPath) + "), each with Threads " + threads + ", Hash " + hashMb + " MB, MultiPV " + multiPv;
+    }
+}
@@ -0,0 +1,185 @@
+package chesspkg;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+// Bounded set of Stockfish processes shared by games and analysis jobs. Processes start lazily,
+// one lease holds one engine exclusively, and at most maxEngines leases exist at a time; further
+// requests wait in order. A reused engine must answer isready and is reset with ucinewgame before
+// it is handed out; engines whose process died are dropped and replaced on demand.
+final class EnginePool {
+    static final long HEALTH_CHECK_TIMEOUT_MILLIS = 2000;
+
+    private final int maxEngines;
+    private final Supplier<StockfishEngine> factory;
+    private final EngineConfig config;
+    // Starting a process blocks on the UCI handshake, so it never happens on the caller's thread
+    private final ExecutorService spawnThread = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "engine-pool-spawn");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ArrayDeque<StockfishEngine> idle = new ArrayDeque<>();
+    private final ArrayDeque<CompletableFuture<Lease>> waiting = new ArrayDeque<>();
+    private int leased;
+    private boolean closed;
+    private long spawned;
+    private long recycled;
+
+    // Exclusive use of one engine until close(); closing twice is harmless
+    final class Lease implements AutoCloseable {
+        private final StockfishEngine engine;
+        private boolean released;
+
+        private Lease(StockfishEngine engine) {
+            this.engine = engine;
+        }
+
+        StockfishEngine engine() {
+            return engine;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (released) return;
+                released = true;
+            }
+            release(engine);
+        }
+    }
+
+    EnginePool(int maxEngines, Supplier<StockfishEngine> factory, EngineConfig config) {
+        this.maxEngines = Math.max(1, maxEngines);
+        this.factory = factory;
+        this.config = config;
+    }
+
+    // Completes with a healthy engine once one is free, or exceptionally if none can be started
+    CompletableFuture<Lease> lease() {
+        CompletableFuture<Lease> request = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                request.completeExceptionally(new IllegalStateException("Engine pool is closed"));
+                return request;
+            }
+            if (leased == maxEngines) {
+                waiting.add(request);
+                return request;
+            }
+            leased++;
+        }
+        prepare(request);
+        return request;
+    }
+
+    // Fills a request that already holds a slot: an idle engine that passes isready, else a new process
+    private void prepare(CompletableFuture<Lease> request) {
+        StockfishEngine engine;
+        synchronized (this) {
+            engine = idle.poll();
+        }
+        if (engine == null) {
+            spawnThread.execute(() -> spawn(request));
+            return;
+        }
+        healthCheck(engine).whenComplete((ready, error) -> {
+            if (Boolean.TRUE.equals(ready)) {
+                engine.newGame();
+                if (!request.complete(new Lease(engine))) release(engine);
+            } else {
+                discard(engine);
+                prepare(request);
+            }
+        });
+    }
+
+    private static CompletableFuture<Boolean> healthCheck(StockfishEngine engine) {
+        try {
+            return engine.isReadyAsync(HEALTH_CHECK_TIMEOUT_MILLIS);
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    private void spawn(CompletableFuture<Lease> request) {
+        StockfishEngine engine = factory.get();
+        if (!engine.isAvailable()) {
+            engine.destroy();
+            freeSlot();
+            request.completeExceptionally(new IOException(engine.getFailureReason()));
+            return;
+        }
+        engine.configure(config);
+        synchronized (this) {
+            spawned++;
+        }
+        if (!request.complete(new Lease(engine))) release(engine);
+    }
+
+    // Back to the idle set, unless the process died (recycled) or the pool is closing (quit)
+    private void release(StockfishEngine engine) {
+        engine.stop();
+        engine.setPonder(false);
+        engine.setInfoListener(null);
+        boolean alive = engine.isAvailable();
+        boolean keep;
+        synchronized (this) {
+            keep = alive && !closed;
+            if (keep) idle.push(engine);
+        }
+        if (!keep) {
+            if (alive) engine.close();
+            else discard(engine);
+        }
+        freeSlot();
+    }
+
+    private void discard(StockfishEngine engine) {
+        synchronized (this) {
+            recycled++;
+        }
+        engine.destroy();
+    }
+
+    // Passes the slot to the longest waiting request, if any
+    private void freeSlot() {
+        CompletableFuture<Lease> next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) leased--;
+        }
+        if (next != null) prepare(next);
+    }
+
+    synchronized long getSpawnedCount() {
+        return spawned;
+    }
+
+    // Engines dropped because their process died or failed a health check
+    synchronized long getRecycledCount() {
+        return recycled;
+    }
+
+    // Stops idle engines now and leased ones as their leases are closed; waiting requests fail
+    void close() {
+        ArrayDeque<StockfishEngine> toClose;
+        ArrayDeque<CompletableFuture<Lease>> toFail;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            idle.clear();
+            toFail = new ArrayDeque<>(waiting);
+            waiting.clear();
+        }
+        for (CompletableFuture<Lease> request : toFail) {
+            request.completeExceptionally(new IllegalStateException("Engine pool is closed"));
+        }
+        for (StockfishEngine engine : toClose) engine.close();
+        spawnThread.shutdown();
+    }
+}
@@ -0,0 +1,88 @@
+package chesspkg;
+
+// Static evaluation for the built-in engine: material plus piece-square tables.
+// Tables are laid out from White's point of view with rank 8 first, matching Position's square order.
+final class Evaluation {
+    static final int[] PIECE_VALUES = {100, 320, 330, 500, 900, 0};
+
+    private static final int[][] PIECE_SQUARE = {
+        { // Pawn
+             0,   0,   0,   0,   0,   0,   0,   0,
+            50,  50,  50,  50,  50,  50,  50,  50,
+            10,  10,  20,  30,  30,  20,  10,  10,
+             5,   5,  10,  25,  25,  10,   5,   5,
+             0,   0,   0,  20,  20,   0,   0,   0,
+             5,  -5, -10,   0,   0, -10,  -5,   5,
+             5,  10,  10, -20, -20,  10,  10,   5,
+             0,   0,   0,   0,   0,   0,   0,   0
+        },
+        { // Knight
+           -50, -40, -30, -30, -30, -30, -40, -50,
+           -40, -20,   0,   0,   0,   0, -20, -40,
+           -30,   0,  10,  15,  15,  10,   0, -30,
+           -30,   5,  15,  20,  20,  15,   5, -30,
+           -30,   0,  15,  20,  20,  15,   0, -30,
+           -30,   5,  10,  15,  15,  10,   5, -30,
+           -40, -20,   0,   5,   5,   0, -20, -40,
+           -50, -40, -30, -30, -30, -30, -40, -50
+        },
+        { // Bishop
+           -20, -10, -10, -10, -10, -10, -10, -20,
+           -10,   0,   0,   0,   0,   0,   0, -10,
+           -10,   0,   5,  10,  10,   5,   0, -10,
+           -10,   5,   5,  10,  10,   5,   5, -10,
+           -10,   0,  10,  10,  10,  10,   0, -10,
+           -10,  10,  10,  10,  10,  10,  10, -10,
+           -10,   5,   0,   0,   0,   0,   5, -10,
+           -20, -10, -10, -10, -10, -10, -10, -20
+        },
+        { // Rook
+             0,   0,   0,   0,   0,   0,   0,   0,
+             5,  10,  10,  10,  10,  10,  10,   5,
+            -5,   0,   0,   0,   0,   0,   0,  -5,
+            -5,   0,   0,   0,   0,   0,   0,  -5,
+            -5,   0,   0,   0,   0,   0,   0,  -5,
+            -5,   0,   0,   0,   0,   0,   0,  -5,
+            -5,   0,   0,   0,   0,   0,   0,  -5,
+             0,   0,   0,   5,   5,   0,   0,   0
+        },
+        { // Queen
+           -20, -10, -10,  -5,  -5, -10, -10, -20,
+           -10,   0,   0,   0,   0,   0,   0, -10,
+           -10,   0,   5,   5,   5,   5,   0, -10,
+            -5,   0,   5,   5,   5,   5,   0,  -5,
+             0,   0,   5,   5,   5,   5,   0,  -5,
+           -10,   5,   5,   5,   5,   5,   0, -10,
+           -10,   0,   5,   0,   0,   0,   0, -10,
+           -20, -10, -10,  -5,  -5, -10, -10, -20
+        },
+        { // King
+           -30, -40, -40, -50, -50, -40, -40, -30,
+           -30, -40, -40, -50, -50, -40, -40, -30,
+           -30, -40, -40, -50, -50, -40, -40, -30,
+           -30, -40, -40, -50, -50, -40, -40, -30,
+           -20, -30, -30, -40, -40, -30, -30, -20,
+           -10, -20, -20, -20, -20, -20, -20, -10,
+            20,  20,   0,   0,   0,   0,  20,  20,
+            20,  30,  10,   0,   0,  10,  30,  20
+        }
+    };
+
+    private Evaluation() {}
+
+    // Score in centipawns from the side to move's point of view
+    static int evaluate(Position pos) {
+        int score = 0;
+        for (int type = Position.PAWN; type <= Position.KING; type++) {
+            int[] table = PIECE_SQUARE[type];
+            for (long bb = pos.pieces(Position.makePiece(Position.WHITE, type)); bb != 0; bb &= bb - 1) {
+                score += PIECE_VALUES[type] + table[Long.numberOfTrailingZeros(bb)];
+            }
+            for (long bb = pos.pieces(Position.makePiece(Position.BLACK, type)); bb != 0; bb &= bb - 1) {
+                // Mirror the square vertically to read Black's pieces from the same table
+                score -= PIECE_VALUES[type] + table[Long.numberOfTrailingZeros(bb) ^ 56];
+            }
+        }
+        return pos.getSideToMove() == Position.WHITE ? score : -score;
+    }
+}
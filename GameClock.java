@@ -0,0 +1,61 @@
+package chesspkg;
+
+// Chess clock with a base time and a per-move increment (Fischer). Time is read from
+// System.nanoTime only when asked for, so nothing has to tick for the clock to stay exact.
+final class GameClock {
+    private final long[] remainingNanos = new long[2];
+    private long incrementMillis;
+    private int running = -1;        // color whose time is running, or -1 when stopped
+    private long runningSince;
+
+    GameClock(long baseMillis, long incrementMillis) {
+        reset(baseMillis, incrementMillis);
+    }
+
+    void reset(long baseMillis, long incrementMillis) {
+        this.incrementMillis = incrementMillis;
+        remainingNanos[Position.WHITE] = remainingNanos[Position.BLACK] = baseMillis * 1_000_000L;
+        running = -1;
+    }
+
+    // Starts the given side's time; the other side's clock is left as it is
+    void start(int color) {
+        stop();
+        running = color;
+        runningSince = System.nanoTime();
+    }
+
+    void stop() {
+        if (running == -1) return;
+        remainingNanos[running] -= System.nanoTime() - runningSince;
+        running = -1;
+    }
+
+    // The side to move completed a move: add its increment and hand the time to the opponent
+    void press() {
+        if (running == -1) return;
+        int mover = running;
+        stop();
+        if (remainingNanos[mover] > 0) remainingNanos[mover] += incrementMillis * 1_000_000L;
+        start(mover ^ 1);
+    }
+
+    long remainingMillis(int color) {
+        long nanos = remainingNanos[color];
+        if (color == running) nanos -= System.nanoTime() - runningSince;
+        return Math.max(0L, nanos / 1_000_000L);
+    }
+
+    // True once the side whose time is running has used all of it
+    boolean hasFlagFallen() {
+        return running != -1 && remainingMillis(running) == 0;
+    }
+
+    int getRunningColor() {
+        return running;
+    }
+
+    long getIncrementMillis() {
+        return incrementMillis;
+    }
+}
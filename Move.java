@@ -0,0 +1,90 @@
+package chesspkg;
+
+// Moves packed into a single int:
+// bits 0-5 from square, 6-11 to square, 12-14 promotion piece type (0 = none), 15+ flags
+final class Move {
+    static final int NONE = 0;
+
+    static final int CAPTURE = 1 << 15;
+    static final int DOUBLE_PUSH = 1 << 16;
+    static final int EN_PASSANT = 1 << 17;
+    static final int CASTLING = 1 << 18;
+
+    private Move() {}
+
+    static int encode(int from, int to, int promotion, int flags) {
+        return from | (to << 6) | (promotion << 12) | flags;
+    }
+
+    static int from(int move) {
+        return move & 63;
+    }
+
+    static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    static int promotion(int move) {
+        return (move >>> 12) & 7;
+    }
+
+    static boolean isCapture(int move) {
+        return (move & CAPTURE) != 0;
+    }
+
+    static boolean isEnPassant(int move) {
+        return (move & EN_PASSANT) != 0;
+    }
+
+    static boolean isCastling(int move) {
+        return (move & CASTLING) != 0;
+    }
+
+    static boolean isDoublePush(int move) {
+        return (move & DOUBLE_PUSH) != 0;
+    }
+
+    // Resolves a UCI move string such as "e2e4" or "e7e8q" against the legal moves of pos
+    static int fromUci(Position pos, String uci, int[] moveBuffer) {
+        return fromUci(uci, moveBuffer, MoveGenerator.generateLegalMoves(pos, moveBuffer));
+    }
+
+    // Resolves a UCI move string against an already generated legal move list
+    static int fromUci(String uci, int[] moves, int count) {
+        if (uci == null || uci.length() < 4) return NONE;
+        int from = squareFromUci(uci, 0);
+        int to = squareFromUci(uci, 2);
+        int promotion = (uci.length() >= 5) ? "pnbrqk".indexOf(uci.charAt(4)) : 0;
+        if (from < 0 || to < 0) return NONE;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            if (from(move) == from && to(move) == to && promotion(move) == Math.max(promotion, 0)) {
+                return move;
+            }
+        }
+        return NONE;
+    }
+
+    private static int squareFromUci(String uci, int index) {
+        int file = uci.charAt(index) - 'a';
+        int rank = uci.charAt(index + 1) - '1';
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) return -1;
+        return (7 - rank) * 8 + file;
+    }
+
+    static String toUci(int move) {
+        StringBuilder sb = new StringBuilder(5);
+        appendUci(sb, move);
+        return sb.toString();
+    }
+
+    static void appendUci(StringBuilder sb, int move) {
+        appendSquare(sb, from(move));
+        appendSquare(sb, to(move));
+        if (promotion(move) != 0) sb.append("pnbrqk".charAt(promotion(move)));
+    }
+
+    private static void appendSquare(StringBuilder sb, int sq) {
+        sb.append((char) ('a' + (sq & 7))).append((char) ('8' - (sq >> 3)));
+    }
+}
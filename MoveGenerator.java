@@ -0,0 +1,101 @@
+package chesspkg;
+
+// Generates packed int moves into a caller-owned buffer; nothing is allocated per call.
+final class MoveGenerator {
+    // Upper bound on legal moves in any reachable position (218) with headroom
+    static final int MAX_MOVES = 256;
+
+    private static final int[] PROMOTION_TYPES = {Position.QUEEN, Position.ROOK, Position.BISHOP, Position.KNIGHT};
+
+    private MoveGenerator() {}
+
+    // Fills moves with every legal move for the side to move and returns how many were written
+    static int generateLegalMoves(Position pos, int[] moves) {
+        int us = pos.getSideToMove();
+        int kingSq = pos.getKingSquare(us);
+        long checkers = pos.checkers();
+        long pinned = pos.pinnedPieces(us);
+        int count = generatePseudoLegalMoves(pos, moves);
+        int legal = 0;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int from = Move.from(move);
+            // Castling is only generated when the king's path is already known to be safe, and
+            // out of check an unpinned non-king piece cannot expose its own king
+            if (Move.isCastling(move)
+                    || (checkers == 0 && from != kingSq && (pinned & (1L << from)) == 0 && !Move.isEnPassant(move))) {
+                moves[legal++] = move;
+                continue;
+            }
+            pos.makeMove(move);
+            if (!pos.isInCheck(us)) moves[legal++] = move;
+            pos.unmakeMove();
+        }
+        return legal;
+    }
+
+    static int generatePseudoLegalMoves(Position pos, int[] moves) {
+        int us = pos.getSideToMove();
+        int them = us ^ 1;
+        long own = pos.occupancy(us);
+        long enemy = pos.occupancy(them);
+        long occupied = pos.occupied();
+        int n = 0;
+
+        int forward = (us == Position.WHITE) ? -8 : 8;
+        int startRow = (us == Position.WHITE) ? 6 : 1;
+        int epSquare = pos.getEpSquare();
+        for (long bb = pos.pieces(Position.makePiece(us, Position.PAWN)); bb != 0; bb &= bb - 1) {
+            int from = Long.numberOfTrailingZeros(bb);
+            int one = from + forward;
+            if ((occupied & (1L << one)) == 0) {
+                n = addPawnMoves(moves, n, from, one, 0);
+                int two = one + forward;
+                if ((from >> 3) == startRow && (occupied & (1L << two)) == 0) {
+                    moves[n++] = Move.encode(from, two, 0, Move.DOUBLE_PUSH);
+                }
+            }
+            long attacks = Bitboards.PAWN_ATTACKS[us][from];
+            for (long caps = attacks & enemy; caps != 0; caps &= caps - 1) {
+                n = addPawnMoves(moves, n, from, Long.numberOfTrailingZeros(caps), Move.CAPTURE);
+            }
+            if (epSquare != -1 && (attacks & (1L << epSquare)) != 0) {
+                moves[n++] = Move.encode(from, epSquare, 0, Move.CAPTURE | Move.EN_PASSANT);
+            }
+        }
+
+        for (int type = Position.KNIGHT; type <= Position.KING; type++) {
+            for (long bb = pos.pieces(Position.makePiece(us, type)); bb != 0; bb &= bb - 1) {
+                int from = Long.numberOfTrailingZeros(bb);
+                long targets;
+                switch (type) {
+                    case Position.KNIGHT: targets = Bitboards.KNIGHT_ATTACKS[from]; break;
+                    case Position.BISHOP: targets = Bitboards.bishopAttacks(from, occupied); break;
+                    case Position.ROOK: targets = Bitboards.rookAttacks(from, occupied); break;
+                    case Position.QUEEN: targets = Bitboards.queenAttacks(from, occupied); break;
+                    default: targets = Bitboards.KING_ATTACKS[from]; break;
+                }
+                for (targets &= ~own; targets != 0; targets &= targets - 1) {
+                    int to = Long.numberOfTrailingZeros(targets);
+                    moves[n++] = Move.encode(from, to, 0, (enemy & (1L << to)) != 0 ? Move.CAPTURE : 0);
+                }
+            }
+        }
+
+        int kingSq = pos.getKingSquare(us);
+        if (pos.canCastle(kingSq, kingSq + 2)) moves[n++] = Move.encode(kingSq, kingSq + 2, 0, Move.CASTLING);
+        if (pos.canCastle(kingSq, kingSq - 2)) moves[n++] = Move.encode(kingSq, kingSq - 2, 0, Move.CASTLING);
+        return n;
+    }
+
+    private static int addPawnMoves(int[] moves, int n, int from, int to, int flags) {
+        if (to < 8 || to >= 56) {
+            for (int type : PROMOTION_TYPES) {
+                moves[n++] = Move.encode(from, to, type, flags);
+            }
+        } else {
+            moves[n++] = Move.encode(from, to, 0, flags);
+        }
+        return n;
+    }
+}
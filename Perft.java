@@ -0,0 +1,135 @@
+package chesspkg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Headless perft driver: counts leaf nodes of the legal move tree to verify and time the rules engine.
+// Usage: java chesspkg.Perft [--fen "<fen>"] [--depth N] [--divide] [--threads N]
+//        java chesspkg.Perft --suite [--threads N]
+public final class Perft {
+    // Reference positions with known node counts per depth (index 0 is depth 1)
+    private static final Object[][] SUITE = {
+        {"Start position", Position.START_FEN,
+            new long[]{20, 400, 8902, 197281, 4865609}},
+        {"Kiwipete", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            new long[]{48, 2039, 97862, 4085603}},
+        {"Position 3", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            new long[]{14, 191, 2812, 43238, 674624}},
+        {"Position 4", "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            new long[]{6, 264, 9467, 422333}},
+        {"Position 5", "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            new long[]{44, 1486, 62379, 2103487}},
+        {"Position 6", "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            new long[]{46, 2079, 89890, 3894594}}
+    };
+
+    private Perft() {}
+
+    // Leaf count below pos; buffers[d] is the move list for the node at remaining depth d
+    static long perft(Position pos, int depth, int[][] buffers) {
+        int[] moves = buffers[depth];
+        int count = MoveGenerator.generateLegalMoves(pos, moves);
+        if (depth == 1) return count;
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            pos.makeMove(moves[i]);
+            nodes += perft(pos, depth - 1, buffers);
+            pos.unmakeMove();
+        }
+        return nodes;
+    }
+
+    static int[][] newBuffers(int depth) {
+        return new int[depth + 1][MoveGenerator.MAX_MOVES];
+    }
+
+    // Splits the tree at the root across threads; each worker replays its root move on its own position
+    static long run(String fen, int depth, int threads, boolean divide) throws Exception {
+        Position root = new Position();
+        root.setFen(fen);
+        if (depth == 0) return 1;
+        int[] rootMoves = new int[MoveGenerator.MAX_MOVES];
+        int count = MoveGenerator.generateLegalMoves(root, rootMoves);
+        if (depth == 1 && !divide) return count;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int move = rootMoves[i];
+                results.add(executor.submit(() -> {
+                    if (depth == 1) return 1L;
+                    Position pos = new Position();
+                    pos.setFen(fen);
+                    pos.makeMove(move);
+                    return perft(pos, depth - 1, newBuffers(depth - 1));
+                }));
+            }
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                long nodes = results.get(i).get();
+                if (divide) System.out.println(Move.toUci(rootMoves[i]) + ": " + nodes);
+                total += nodes;
+            }
+            return total;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static boolean runSuite(int threads) throws Exception {
+        boolean allPassed = true;
+        long totalNodes = 0;
+        long start = System.nanoTime();
+        for (Object[] entry : SUITE) {
+            String name = (String) entry[0];
+            String fen = (String) entry[1];
+            long[] expected = (long[]) entry[2];
+            for (int depth = 1; depth <= expected.length; depth++) {
+                long nodes = run(fen, depth, threads, false);
+                totalNodes += nodes;
+                boolean ok = nodes == expected[depth - 1];
+                allPassed &= ok;
+                System.out.printf("%-15s depth %d: %,14d %s%n", name, depth, nodes,
+                        ok ? "ok" : "FAIL (expected " + expected[depth - 1] + ")");
+            }
+        }
+        report(totalNodes, System.nanoTime() - start);
+        System.out.println(allPassed ? "All perft checks passed" : "Perft checks FAILED");
+        return allPassed;
+    }
+
+    private static void report(long nodes, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("Nodes: %,d  Time: %.3f s  NPS: %,.0f%n", nodes, seconds, nodes / Math.max(seconds, 1e-9));
+    }
+
+    public static void main(String[] args) throws Exception {
+        String fen = Position.START_FEN;
+        int depth = 5;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean divide = false;
+        boolean suite = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--fen": fen = args[++i]; break;
+                case "--depth": depth = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--divide": divide = true; break;
+                case "--suite": suite = true; break;
+                default:
+                    System.err.println("Unknown argument: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (suite) {
+            System.exit(runSuite(threads) ? 0 : 1);
+        }
+        long start = System.nanoTime();
+        long nodes = run(fen, depth, threads, divide);
+        report(nodes, System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,445 @@
+package chesspkg;
+
+// Bitboard position model: the source of truth for move legality.
+// The ChessPiece[][] grid in ChessGame is derived from this only for drawing.
+final class Position {
+    static final int WHITE = 0, BLACK = 1;
+    static final int PAWN = 0, KNIGHT = 1, BISHOP = 2, ROOK = 3, QUEEN = 4, KING = 5;
+    static final int EMPTY = -1;
+
+    static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // Initial capacity of the undo stack; longer than any game or search line we play, and
+    // doubled by makeMove if a longer one comes along
+    static final int MAX_PLY = 4096;
+
+    static final int WHITE_KINGSIDE = 1, WHITE_QUEENSIDE = 2;
+    static final int BLACK_KINGSIDE = 4, BLACK_QUEENSIDE = 8;
+
+    // Castling rights that survive a move touching the given square
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        java.util.Arrays.fill(CASTLING_MASK, 15);
+        CASTLING_MASK[56] &= ~WHITE_QUEENSIDE;
+        CASTLING_MASK[63] &= ~WHITE_KINGSIDE;
+        CASTLING_MASK[60] &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        CASTLING_MASK[0] &= ~BLACK_QUEENSIDE;
+        CASTLING_MASK[7] &= ~BLACK_KINGSIDE;
+        CASTLING_MASK[4] &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+    }
+
+    // pieces[color * 6 + type]
+    private final long[] pieces = new long[12];
+    private final long[] occupancy = new long[2];
+    private long occupied;
+    private final int[] mailbox = new int[64];
+    private final int[] kingSquare = new int[2];
+    private int sideToMove;
+    private int castling;
+    private int epSquare = -1;
+    private int halfmoveClock;
+    private int fullmoveNumber = 1;
+    private long key;
+
+    // Undo stack: everything makeMove cannot recompute from the move itself
+    private int[] undoMove = new int[MAX_PLY];
+    private int[] undoCaptured = new int[MAX_PLY];
+    private int[] undoCastling = new int[MAX_PLY];
+    private int[] undoEpSquare = new int[MAX_PLY];
+    private int[] undoHalfmoveClock = new int[MAX_PLY];
+    // Zobrist key of the position before each move; doubles as the repetition history
+    private long[] undoKey = new long[MAX_PLY];
+    private int ply;
+    // Where the moves on the undo stack start from; lets engines replay the whole game
+    private String rootFen = START_FEN;
+    private boolean fromStartPosition = true;
+
+    Position() {
+        setStartPosition();
+    }
+
+    static int makePiece(int color, int type) {
+        return color * 6 + type;
+    }
+
+    static int colorOf(int piece) {
+        return piece < 6 ? WHITE : BLACK;
+    }
+
+    static int typeOf(int piece) {
+        return piece % 6;
+    }
+
+    void setStartPosition() {
+        clear();
+        int[] backRank = {ROOK, KNIGHT, BISHOP, QUEEN, KING, BISHOP, KNIGHT, ROOK};
+        for (int col = 0; col < 8; col++) {
+            put(makePiece(BLACK, backRank[col]), col);
+            put(makePiece(BLACK, PAWN), 8 + col);
+            put(makePiece(WHITE, PAWN), 48 + col);
+            put(makePiece(WHITE, backRank[col]), 56 + col);
+        }
+        castling = WHITE_KINGSIDE | WHITE_QUEENSIDE | BLACK_KINGSIDE | BLACK_QUEENSIDE;
+        sideToMove = WHITE;
+        key = computeKey();
+        rootFen = START_FEN;
+        fromStartPosition = true;
+    }
+
+    // Loads a position from Forsyth-Edwards Notation; the clock fields are optional
+    void setFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 4) throw new IllegalArgumentException("Invalid FEN: " + fen);
+        clear();
+        int row = 0, col = 0;
+        for (char c : fields[0].toCharArray()) {
+            if (c == '/') {
+                row++;
+                col = 0;
+            } else if (c >= '1' && c <= '8') {
+                col += c - '0';
+            } else {
+                int type = "pnbrqk".indexOf(Character.toLowerCase(c));
+                if (type < 0 || row > 7 || col > 7) throw new IllegalArgumentException("Invalid FEN: " + fen);
+                put(makePiece(Character.isUpperCase(c) ? WHITE : BLACK, type), row * 8 + col);
+                col++;
+            }
+        }
+        if (pieces[makePiece(WHITE, KING)] == 0 || pieces[makePiece(BLACK, KING)] == 0) {
+            throw new IllegalArgumentException("FEN needs both kings: " + fen);
+        }
+        sideToMove = fields[1].equals("b") ? BLACK : WHITE;
+        if (fields[2].indexOf('K') >= 0) castling |= WHITE_KINGSIDE;
+        if (fields[2].indexOf('Q') >= 0) castling |= WHITE_QUEENSIDE;
+        if (fields[2].indexOf('k') >= 0) castling |= BLACK_KINGSIDE;
+        if (fields[2].indexOf('q') >= 0) castling |= BLACK_QUEENSIDE;
+        if (!fields[3].equals("-")) {
+            epSquare = (8 - (fields[3].charAt(1) - '0')) * 8 + (fields[3].charAt(0) - 'a');
+        }
+        if (fields.length >= 6) {
+            halfmoveClock = Integer.parseInt(fields[4]);
+            fullmoveNumber = Integer.parseInt(fields[5]);
+        }
+        key = computeKey();
+        rootFen = fen.trim();
+        fromStartPosition = false;
+    }
+
+    // Forsyth-Edwards Notation of the current position, including en passant and both clocks.
+    // As in standard FEN, the en-passant square is given after every double push.
+    String toFen() {
+        StringBuilder fen = new StringBuilder(90);
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                int piece = mailbox[row * 8 + col];
+                if (piece == EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) fen.append(empty);
+                empty = 0;
+                char c = "pnbrqk".charAt(typeOf(piece));
+                fen.append(colorOf(piece) == WHITE ? Character.toUpperCase(c) : c);
+            }
+            if (empty > 0) fen.append(empty);
+            if (row < 7) fen.append('/');
+        }
+        fen.append(sideToMove == WHITE ? " w " : " b ");
+        if (castling == 0) fen.append('-');
+        if (hasCastlingRight(WHITE_KINGSIDE)) fen.append('K');
+        if (hasCastlingRight(WHITE_QUEENSIDE)) fen.append('Q');
+        if (hasCastlingRight(BLACK_KINGSIDE)) fen.append('k');
+        if (hasCastlingRight(BLACK_QUEENSIDE)) fen.append('q');
+        fen.append(' ');
+        if (epSquare == -1) {
+            fen.append('-');
+        } else {
+            fen.append((char) ('a' + (epSquare & 7))).append((char) ('8' - (epSquare >> 3)));
+        }
+        return fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber).toString();
+    }
+
+    private void clear() {
+        java.util.Arrays.fill(pieces, 0L);
+        occupancy[WHITE] = occupancy[BLACK] = 0L;
+        occupied = 0L;
+        key = 0L;
+        java.util.Arrays.fill(mailbox, EMPTY);
+        castling = 0;
+        epSquare = -1;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        ply = 0;
+        sideToMove = WHITE;
+    }
+
+    private void put(int piece, int sq) {
+        long bit = 1L << sq;
+        pieces[piece] |= bit;
+        occupancy[colorOf(piece)] |= bit;
+        occupied |= bit;
+        mailbox[sq] = piece;
+        key ^= Zobrist.PIECE_SQUARE[piece][sq];
+        if (typeOf(piece) == KING) kingSquare[colorOf(piece)] = sq;
+    }
+
+    private void remove(int sq) {
+        int piece = mailbox[sq];
+        long bit = 1L << sq;
+        pieces[piece] &= ~bit;
+        occupancy[colorOf(piece)] &= ~bit;
+        occupied &= ~bit;
+        mailbox[sq] = EMPTY;
+        key ^= Zobrist.PIECE_SQUARE[piece][sq];
+    }
+
+    // Full recomputation of the Zobrist key; makeMove keeps it up to date incrementally
+    private long computeKey() {
+        long result = 0L;
+        for (int sq = 0; sq < 64; sq++) {
+            if (mailbox[sq] != EMPTY) result ^= Zobrist.PIECE_SQUARE[mailbox[sq]][sq];
+        }
+        result ^= Zobrist.CASTLING[castling] ^ epKey();
+        return (sideToMove == BLACK) ? result ^ Zobrist.SIDE_TO_MOVE : result;
+    }
+
+    // The en-passant file only counts towards the key when the side to move can actually capture
+    private long epKey() {
+        if (epSquare == -1) return 0L;
+        long capturers = Bitboards.PAWN_ATTACKS[sideToMove ^ 1][epSquare] & pieces[makePiece(sideToMove, PAWN)];
+        return (capturers != 0) ? Zobrist.EN_PASSANT_FILE[epSquare & 7] : 0L;
+    }
+
+    int pieceAt(int sq) {
+        return mailbox[sq];
+    }
+
+    int getSideToMove() {
+        return sideToMove;
+    }
+
+    long pieces(int piece) {
+        return pieces[piece];
+    }
+
+    long occupancy(int color) {
+        return occupancy[color];
+    }
+
+    long occupied() {
+        return occupied;
+    }
+
+    // Square a pawn may capture onto en passant, or -1
+    int getEpSquare() {
+        return epSquare;
+    }
+
+    long getKey() {
+        return key;
+    }
+
+    int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    // Number of moves that can currently be taken back with unmakeMove
+    int getPly() {
+        return ply;
+    }
+
+    // The index-th move played since the root position (0 = first move)
+    int getMoveAt(int index) {
+        return undoMove[index];
+    }
+
+    // FEN of the position the move history starts from
+    String getRootFen() {
+        return rootFen;
+    }
+
+    // True when the move history starts from the standard initial position
+    boolean isFromStartPosition() {
+        return fromStartPosition;
+    }
+
+    int getKingSquare(int color) {
+        return kingSquare[color];
+    }
+
+    boolean hasCastlingRight(int right) {
+        return (castling & right) != 0;
+    }
+
+    // Enemy pieces of the given side attacking sq, found by looking outward from sq
+    long attackersOf(int sq, int byColor) {
+        long bishopsQueens = pieces[makePiece(byColor, BISHOP)] | pieces[makePiece(byColor, QUEEN)];
+        long rooksQueens = pieces[makePiece(byColor, ROOK)] | pieces[makePiece(byColor, QUEEN)];
+        return (Bitboards.PAWN_ATTACKS[byColor ^ 1][sq] & pieces[makePiece(byColor, PAWN)])
+             | (Bitboards.KNIGHT_ATTACKS[sq] & pieces[makePiece(byColor, KNIGHT)])
+             | (Bitboards.KING_ATTACKS[sq] & pieces[makePiece(byColor, KING)])
+             | (Bitboards.bishopAttacks(sq, occupied) & bishopsQueens)
+             | (Bitboards.rookAttacks(sq, occupied) & rooksQueens);
+    }
+
+    boolean isSquareAttacked(int sq, int byColor) {
+        long bishopsQueens = pieces[makePiece(byColor, BISHOP)] | pieces[makePiece(byColor, QUEEN)];
+        long rooksQueens = pieces[makePiece(byColor, ROOK)] | pieces[makePiece(byColor, QUEEN)];
+        return (Bitboards.PAWN_ATTACKS[byColor ^ 1][sq] & pieces[makePiece(byColor, PAWN)]) != 0
+            || (Bitboards.KNIGHT_ATTACKS[sq] & pieces[makePiece(byColor, KNIGHT)]) != 0
+            || (Bitboards.KING_ATTACKS[sq] & pieces[makePiece(byColor, KING)]) != 0
+            || (bishopsQueens != 0 && (Bitboards.bishopAttacks(sq, occupied) & bishopsQueens) != 0)
+            || (rooksQueens != 0 && (Bitboards.rookAttacks(sq, occupied) & rooksQueens) != 0);
+    }
+
+    boolean isInCheck(int color) {
+        return isSquareAttacked(kingSquare[color], color ^ 1);
+    }
+
+    // Enemy pieces currently giving check to the side to move
+    long checkers() {
+        return attackersOf(kingSquare[sideToMove], sideToMove ^ 1);
+    }
+
+    // Pieces of the given side that are the only blocker between their king and an enemy slider
+    long pinnedPieces(int color) {
+        int kingSq = kingSquare[color];
+        int them = color ^ 1;
+        long snipers = (Bitboards.rookAttacks(kingSq, 0L)
+                        & (pieces[makePiece(them, ROOK)] | pieces[makePiece(them, QUEEN)]))
+                     | (Bitboards.bishopAttacks(kingSq, 0L)
+                        & (pieces[makePiece(them, BISHOP)] | pieces[makePiece(them, QUEEN)]));
+        long pinned = 0L;
+        for (; snipers != 0; snipers &= snipers - 1) {
+            long blockers = Bitboards.between(kingSq, Long.numberOfTrailingZeros(snipers)) & occupied;
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0 && (blockers & occupancy[color]) != 0) {
+                pinned |= blockers;
+            }
+        }
+        return pinned;
+    }
+
+    boolean canCastle(int from, int to) {
+        int piece = mailbox[from];
+        if (piece == EMPTY || typeOf(piece) != KING) return false;
+        int us = colorOf(piece);
+        int homeSquare = (us == WHITE) ? 60 : 4;
+        if (from != homeSquare || (to != from + 2 && to != from - 2)) return false;
+        boolean kingside = to > from;
+        int right = (us == WHITE)
+                ? (kingside ? WHITE_KINGSIDE : WHITE_QUEENSIDE)
+                : (kingside ? BLACK_KINGSIDE : BLACK_QUEENSIDE);
+        if (!hasCastlingRight(right)) return false;
+        int rookSquare = kingside ? from + 3 : from - 4;
+        if (mailbox[rookSquare] != makePiece(us, ROOK)) return false;
+        if ((Bitboards.between(from, rookSquare) & occupied) != 0) return false;
+        return !isSquareAttacked(from, us ^ 1)
+            && !isSquareAttacked((from + to) / 2, us ^ 1)
+            && !isSquareAttacked(to, us ^ 1);
+    }
+
+    // Plays a move produced by MoveGenerator, pushing what is needed to take it back
+    void makeMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int piece = mailbox[from];
+        int us = colorOf(piece);
+        int capturedSq = Move.isEnPassant(move) ? enPassantVictim(to, us) : to;
+        int captured = mailbox[capturedSq];
+
+        if (ply == undoMove.length) growUndoStack();
+        undoMove[ply] = move;
+        undoCaptured[ply] = captured;
+        undoCastling[ply] = castling;
+        undoEpSquare[ply] = epSquare;
+        undoHalfmoveClock[ply] = halfmoveClock;
+        undoKey[ply] = key;
+        ply++;
+
+        key ^= Zobrist.CASTLING[castling] ^ epKey();
+        if (captured != EMPTY) remove(capturedSq);
+        remove(from);
+        put(Move.promotion(move) != 0 ? makePiece(us, Move.promotion(move)) : piece, to);
+        if (Move.isCastling(move)) {
+            int rookFrom = (to > from) ? from + 3 : from - 4;
+            int rookTo = (to > from) ? from + 1 : from - 1;
+            remove(rookFrom);
+            put(makePiece(us, ROOK), rookTo);
+        }
+        epSquare = Move.isDoublePush(move) ? (from + to) / 2 : -1;
+        castling &= CASTLING_MASK[from] & CASTLING_MASK[to];
+        halfmoveClock = (typeOf(piece) == PAWN || captured != EMPTY) ? 0 : halfmoveClock + 1;
+        if (us == BLACK) fullmoveNumber++;
+        sideToMove ^= 1;
+        key ^= Zobrist.CASTLING[castling] ^ epKey() ^ Zobrist.SIDE_TO_MOVE;
+    }
+
+    // Only reached past MAX_PLY moves, so the common path stays allocation-free
+    private void growUndoStack() {
+        int capacity = undoMove.length * 2;
+        undoMove = java.util.Arrays.copyOf(undoMove, capacity);
+        undoCaptured = java.util.Arrays.copyOf(undoCaptured, capacity);
+        undoCastling = java.util.Arrays.copyOf(undoCastling, capacity);
+        undoEpSquare = java.util.Arrays.copyOf(undoEpSquare, capacity);
+        undoHalfmoveClock = java.util.Arrays.copyOf(undoHalfmoveClock, capacity);
+        undoKey = java.util.Arrays.copyOf(undoKey, capacity);
+    }
+
+    // Takes back the last move played with makeMove
+    void unmakeMove() {
+        ply--;
+        int move = undoMove[ply];
+        int from = Move.from(move);
+        int to = Move.to(move);
+        sideToMove ^= 1;
+        int us = sideToMove;
+
+        int moved = (Move.promotion(move) != 0) ? makePiece(us, PAWN) : mailbox[to];
+        remove(to);
+        put(moved, from);
+        if (Move.isCastling(move)) {
+            int rookFrom = (to > from) ? from + 3 : from - 4;
+            int rookTo = (to > from) ? from + 1 : from - 1;
+            remove(rookTo);
+            put(makePiece(us, ROOK), rookFrom);
+        }
+        int captured = undoCaptured[ply];
+        if (captured != EMPTY) {
+            put(captured, Move.isEnPassant(move) ? enPassantVictim(to, us) : to);
+        }
+        castling = undoCastling[ply];
+        epSquare = undoEpSquare[ply];
+        halfmoveClock = undoHalfmoveClock[ply];
+        key = undoKey[ply];
+        if (us == BLACK) fullmoveNumber--;
+    }
+
+    // Earlier occurrences of the current position since the last capture or pawn move
+    int repetitionCount() {
+        int count = 0;
+        int oldest = Math.max(0, ply - halfmoveClock);
+        for (int i = ply - 2; i >= oldest; i -= 2) {
+            if (undoKey[i] == key) count++;
+        }
+        return count;
+    }
+
+    boolean isThreefoldRepetition() {
+        return repetitionCount() >= 2;
+    }
+
+    boolean isFiftyMoveDraw() {
+        return halfmoveClock >= 100;
+    }
+
+    // Square of the pawn removed when the given side captures en passant onto epTarget
+    static int enPassantVictim(int epTarget, int us) {
+        return (us == WHITE) ? epTarget + 8 : epTarget - 8;
+    }
+}
@@ -0,0 +1,294 @@
+package chesspkg;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Best move, score and PV of finished engine searches, so a position met again (a replayed opening,
+// a puzzle) is answered without searching. Two levels: an LRU map in memory in front of a
+// memory-mapped hash file that survives restarts. Results are kept per engine and level: level 0 is
+// full strength, where a result answers any request it searched at least as hard as (no less depth,
+// nodes or time, a limit of 0 meaning unbounded). A game difficulty is weakened on purpose, so its
+// results only answer the same level with the same depth and node caps; only the time, which follows
+// the clock, may differ.
+// Disk slots are 64 bytes, big-endian: key (8), node limit (8), time limit (8), score (4),
+// depth limit (1), depth reached (1), engine and level (1, level in the high nibble), flags (1), then
+// up to 16 PV moves (2 each, 0-ended).
+// Slots are grouped in buckets of 4 by key; a full bucket replaces its shallowest result.
+// Not thread-safe; the game uses it from the FX thread only.
+final class ResultCache {
+    static final int BUILT_IN = 0;
+    static final int STOCKFISH = 1;
+    static final int DEFAULT_MEMORY_ENTRIES = 4096;
+    static final int DEFAULT_DISK_SLOTS = 1 << 16;   // 4 MiB
+    static final int MAX_PV = 16;
+
+    private static final long MAGIC = 0x4348_5352_4553_0002L;   // "CHSRES" and format version 2
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 64;
+    private static final int BUCKET_SLOTS = 4;
+    private static final int PV_OFFSET = 32;
+    private static final int FLAG_USED = 1;
+    private static final int FLAG_SCORE = 2;
+    private static final int FLAG_MATE = 4;
+    private static final int MOVE_MASK = 0x7FFF;   // from, to and promotion; flags are not stored
+    // Rough heap cost of one memory entry besides its PV: result object, map entry and boxed key
+    private static final int MEMORY_ENTRY_BYTES = 120;
+
+    // One cached search; immutable
+    static final class Result {
+        final int engine;
+        final int level;
+        final int depthLimit;
+        final long nodeLimit;
+        final long timeLimit;
+        final int depth;
+        final boolean hasScore;
+        final boolean mate;
+        final int score;
+        final int[] pv;   // pv[0] is the best move
+
+        Result(int engine, int level, int depthLimit, long nodeLimit, long timeLimit, int depth,
+               boolean hasScore, boolean mate, int score, int[] pv) {
+            this.engine = engine;
+            this.level = level;
+            this.depthLimit = depthLimit;
+            this.nodeLimit = nodeLimit;
+            this.timeLimit = timeLimit;
+            this.depth = depth;
+            this.hasScore = hasScore;
+            this.mate = mate;
+            this.score = score;
+            this.pv = pv;
+        }
+
+        int bestMove() {
+            return pv[0];
+        }
+
+        // True if this search can answer the one requested: the same engine and level, and at least as
+        // thorough; a difficulty level also needs the very depth and node caps it plays with
+        boolean satisfies(int engine, int level, int depthLimit, long nodeLimit, long timeLimit) {
+            if (this.engine != engine || this.level != level) return false;
+            if (level != 0 && (this.depthLimit != depthLimit || this.nodeLimit != nodeLimit)) return false;
+            return covers(this.depthLimit, depthLimit) && covers(this.nodeLimit, nodeLimit)
+                    && covers(this.timeLimit, timeLimit);
+        }
+
+        private static boolean covers(long have, long want) {
+            return have == 0 || (want != 0 && have >= want);
+        }
+
+        // Fills info as the engine's final report of this search would
+        void copyTo(UciInfo info) {
+            info.clear();
+            info.depth = depth;
+            info.hasScore = hasScore;
+            info.mate = mate;
+            info.score = score;
+            info.pvLength = pv.length;
+            System.arraycopy(pv, 0, info.pv, 0, pv.length);
+        }
+    }
+
+    private final LinkedHashMap<Long, Result> memory;
+    private final MappedByteBuffer disk;   // null when the cache lives in memory only
+    private final int bucketMask;
+    private int diskSlotsUsed;
+    private long lookups;
+    private long memoryHits;
+    private long diskHits;
+
+    private ResultCache(int memoryEntries, MappedByteBuffer disk, int diskSlots) {
+        this.memory = new LinkedHashMap<Long, Result>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Result> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+        this.disk = disk;
+        this.bucketMask = diskSlots / BUCKET_SLOTS - 1;
+        if (disk != null) {
+            for (int slot = 0; slot < diskSlots; slot++) {
+                if ((disk.get(slotOffset(slot) + 31) & FLAG_USED) != 0) diskSlotsUsed++;
+            }
+        }
+    }
+
+    static ResultCache inMemory(int memoryEntries) {
+        return new ResultCache(memoryEntries, null, 0);
+    }
+
+    // Opens or creates the disk level; a file of another size or format is started afresh.
+    // diskSlots must be a power of two and at least 4.
+    static ResultCache open(Path file, int memoryEntries, int diskSlots) throws IOException {
+        long size = HEADER_SIZE + (long) diskSlots * SLOT_SIZE;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean fresh = channel.size() != size;
+            if (fresh) channel.truncate(0);
+            // Mapping past the end grows the file, zero-filled
+            MappedByteBuffer disk = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (fresh || disk.getLong(0) != MAGIC || disk.getInt(8) != diskSlots) {
+                for (int i = 0; i < size; i += 8) disk.putLong(i, 0L);
+                disk.putLong(0, MAGIC);
+                disk.putInt(8, diskSlots);
+            }
+            return new ResultCache(memoryEntries, disk, diskSlots);
+        }
+    }
+
+    // A result for this position that satisfies limits, or null. level is 0 for a full-strength
+    // search, else the game difficulty the limits belong to.
+    Result probe(long key, int engine, int level, SearchLimits limits, int sideToMove) {
+        lookups++;
+        long timeLimit = limits.maxTimeMillis(sideToMove);
+        Long memoryKey = memoryKey(key, engine, level);
+        Result result = memory.get(memoryKey);
+        if (result != null && result.satisfies(engine, level, limits.depth, limits.nodes, timeLimit)) {
+            memoryHits++;
+            return result;
+        }
+        result = readDisk(key, engine, level);
+        if (result != null && result.satisfies(engine, level, limits.depth, limits.nodes, timeLimit)) {
+            diskHits++;
+            memory.put(memoryKey, result);
+            return result;
+        }
+        return null;
+    }
+
+    // Records a finished search. info is the engine's last report; its score and PV are kept only
+    // if the PV starts with bestMove, so a line left over from another search is never attached.
+    void store(long key, int engine, int level, SearchLimits limits, int sideToMove, int bestMove, UciInfo info) {
+        bestMove &= MOVE_MASK;
+        boolean fromSearch = info.pvLength > 0 && (info.pv[0] & MOVE_MASK) == bestMove;
+        int[] pv;
+        if (fromSearch) {
+            pv = new int[Math.min(info.pvLength, MAX_PV)];
+            for (int i = 0; i < pv.length; i++) pv[i] = info.pv[i] & MOVE_MASK;
+        } else {
+            pv = new int[] { bestMove };
+        }
+        Result result = new Result(engine, level, limits.depth, limits.nodes, limits.maxTimeMillis(sideToMove),
+                fromSearch ? info.depth : 0, fromSearch && info.hasScore, fromSearch && info.mate,
+                fromSearch ? info.score : 0, pv);
+        Long memoryKey = memoryKey(key, engine, level);
+        Result previous = memory.get(memoryKey);
+        if (previous == null || result.depth >= previous.depth) memory.put(memoryKey, result);
+        if (disk != null) writeDisk(key, result);
+    }
+
+    private static Long memoryKey(long key, int engine, int level) {
+        return key + searcherId(engine, level) * 0x9E37_79B9_7F4A_7C15L;
+    }
+
+    // Engine and level as stored in a disk slot
+    private static int searcherId(int engine, int level) {
+        return engine | level << 4;
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private int bucketStart(long key) {
+        return (int) (key ^ (key >>> 32)) & bucketMask;
+    }
+
+    private Result readDisk(long key, int engine, int level) {
+        if (disk == null) return null;
+        int first = bucketStart(key) * BUCKET_SLOTS;
+        for (int slot = first; slot < first + BUCKET_SLOTS; slot++) {
+            int offset = slotOffset(slot);
+            int flags = disk.get(offset + 31);
+            if ((flags & FLAG_USED) == 0 || disk.getLong(offset) != key
+                    || disk.get(offset + 30) != searcherId(engine, level)) continue;
+            int pvLength = 0;
+            while (pvLength < MAX_PV && disk.getChar(offset + PV_OFFSET + 2 * pvLength) != 0) pvLength++;
+            if (pvLength == 0) return null;
+            int[] pv = new int[pvLength];
+            for (int i = 0; i < pvLength; i++) pv[i] = disk.getChar(offset + PV_OFFSET + 2 * i);
+            return new Result(engine, level, disk.get(offset + 28) & 0xFF, disk.getLong(offset + 8),
+                    disk.getLong(offset + 16), disk.get(offset + 29) & 0xFF, (flags & FLAG_SCORE) != 0,
+                    (flags & FLAG_MATE) != 0, disk.getInt(offset + 24), pv);
+        }
+        return null;
+    }
+
+    // Same position, engine and level: keep the deeper result. Otherwise a free slot, else the shallowest.
+    private void writeDisk(long key, Result result) {
+        int first = bucketStart(key) * BUCKET_SLOTS;
+        int target = -1;
+        int shallowest = first;
+        for (int slot = first; slot < first + BUCKET_SLOTS; slot++) {
+            int offset = slotOffset(slot);
+            int flags = disk.get(offset + 31);
+            if ((flags & FLAG_USED) == 0) {
+                if (target == -1) target = slot;
+                continue;
+            }
+            if (disk.getLong(offset) == key && disk.get(offset + 30) == searcherId(result.engine, result.level)) {
+                if ((disk.get(offset + 29) & 0xFF) > result.depth) return;
+                target = slot;
+                break;
+            }
+            if ((disk.get(offset + 29) & 0xFF) < (disk.get(slotOffset(shallowest) + 29) & 0xFF)) shallowest = slot;
+        }
+        if (target == -1) target = shallowest;
+        int offset = slotOffset(target);
+        if ((disk.get(offset + 31) & FLAG_USED) == 0) diskSlotsUsed++;
+        disk.putLong(offset, key);
+        disk.putLong(offset + 8, result.nodeLimit);
+        disk.putLong(offset + 16, result.timeLimit);
+        disk.putInt(offset + 24, result.score);
+        disk.put(offset + 28, (byte) Math.min(result.depthLimit, 255));
+        disk.put(offset + 29, (byte) Math.min(result.depth, 255));
+        disk.put(offset + 30, (byte) searcherId(result.engine, result.level));
+        for (int i = 0; i < MAX_PV; i++) {
+            disk.putChar(offset + PV_OFFSET + 2 * i, (i < result.pv.length) ? (char) result.pv[i] : 0);
+        }
+        disk.put(offset + 31, (byte) (FLAG_USED | (result.hasScore ? FLAG_SCORE : 0) | (result.mate ? FLAG_MATE : 0)));
+    }
+
+    long getLookupCount() {
+        return lookups;
+    }
+
+    long getHitCount() {
+        return memoryHits + diskHits;
+    }
+
+    long getDiskHitCount() {
+        return diskHits;
+    }
+
+    double getHitRate() {
+        return (lookups == 0) ? 0.0 : (double) getHitCount() / lookups;
+    }
+
+    // Estimated heap held by the memory level
+    long getMemoryBytes() {
+        long bytes = 0L;
+        for (Result result : memory.values()) bytes += MEMORY_ENTRY_BYTES + 4L * result.pv.length;
+        return bytes;
+    }
+
+    // Bytes of the disk file holding results, out of getDiskCapacityBytes()
+    long getDiskBytes() {
+        return (long) diskSlotsUsed * SLOT_SIZE;
+    }
+
+    long getDiskCapacityBytes() {
+        return (disk == null) ? 0L : disk.capacity();
+    }
+
+    // Writes the disk level back to the file
+    void close() {
+        if (disk != null) disk.force();
+    }
+}
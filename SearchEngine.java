@@ -0,0 +1,268 @@
+package chesspkg;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// In-process engine: iterative-deepening alpha-beta with quiescence search and move ordering.
+// All search buffers are allocated once per engine, so a search itself does not allocate.
+final class SearchEngine implements ChessEngine {
+    static final int MAX_PLY = 128;
+    static final int MATE = 100_000;
+    private static final int INFINITY = 1_000_000;
+
+    private final Position position = new Position();
+    private final int[][] moves = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+    private final int[][] scores = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+    private final int[][] killers = new int[MAX_PLY][2];
+
+    private int searchDepth = 7;
+    private long nodeLimit = Long.MAX_VALUE;
+    private long timeLimitMillis;
+
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "search-engine");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Bumped by stop(); a search whose generation is out of date aborts at its next budget check
+    private final AtomicInteger generation = new AtomicInteger();
+    private int searchGeneration;
+    private volatile Consumer<UciInfo> infoListener;
+    private final UciInfo info = new UciInfo();
+
+    private long nodes;
+    private long deadline;
+    private boolean stopped;
+    private int rootBestMove;
+
+    private void setSearchDepth(int depth) {
+        this.searchDepth = Math.max(1, Math.min(depth, MAX_PLY / 2));
+    }
+
+    // Stop after roughly this many nodes; 0 means no limit
+    private void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = (nodeLimit > 0) ? nodeLimit : Long.MAX_VALUE;
+    }
+
+    // Stop after this much wall-clock time; 0 means no limit
+    private void setTimeLimitMillis(long timeLimitMillis) {
+        this.timeLimitMillis = Math.max(0, timeLimitMillis);
+    }
+
+    // Runs on the search thread like any other request, so it never shares the buffers with a search
+    // already under way there
+    @Override
+    public String getBestMove(Position pos, SearchLimits limits) {
+        return getBestMoveAsync(pos, limits).join();
+    }
+
+    // Replays the game so the search sees its repetition history
+    private String bestMove(String rootFen, int[] gameMoves, SearchLimits limits) {
+        setSearchDepth((limits.depth > 0) ? limits.depth : MAX_PLY);
+        setNodeLimit(limits.nodes);
+        position.setFen(rootFen);
+        for (int move : gameMoves) position.makeMove(move);
+        setTimeLimitMillis(limits.maxTimeMillis(position.getSideToMove()));
+        int move = search(position);
+        return (move == Move.NONE) ? null : Move.toUci(move);
+    }
+
+    private static int[] gameMoves(Position pos) {
+        int[] gameMoves = new int[pos.getPly()];
+        for (int i = 0; i < gameMoves.length; i++) gameMoves[i] = pos.getMoveAt(i);
+        return gameMoves;
+    }
+
+    @Override
+    public CompletableFuture<String> getBestMoveAsync(Position pos, SearchLimits limits) {
+        int requestGeneration = generation.get();
+        String rootFen = pos.getRootFen();
+        int[] gameMoves = gameMoves(pos);
+        return CompletableFuture.supplyAsync(() -> {
+            searchGeneration = requestGeneration;
+            return (generation.get() == requestGeneration) ? bestMove(rootFen, gameMoves, limits) : null;
+        }, searchThread);
+    }
+
+    @Override
+    public void newGame() {
+        // Killers are reset per search and nothing else outlives one, so there is nothing to forget
+    }
+
+    @Override
+    public void stop() {
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void setInfoListener(Consumer<UciInfo> listener) {
+        this.infoListener = listener;
+    }
+
+    @Override
+    public void close() {
+        stop();
+        searchThread.shutdown();
+    }
+
+    // Searches pos to the configured depth or budget and returns the best move found
+    int search(Position pos) {
+        nodes = 0;
+        stopped = false;
+        deadline = (timeLimitMillis > 0) ? System.nanoTime() + timeLimitMillis * 1_000_000L : Long.MAX_VALUE;
+        for (int[] k : killers) k[0] = k[1] = Move.NONE;
+
+        long start = System.nanoTime();
+        int count = MoveGenerator.generateLegalMoves(pos, moves[0]);
+        if (count == 0) return Move.NONE;
+        int bestMove = moves[0][0];
+        if (count == 1) return bestMove;
+
+        for (int depth = 1; depth <= searchDepth; depth++) {
+            rootBestMove = bestMove;
+            int score = negamax(pos, depth, 0, -INFINITY, INFINITY);
+            // A stopped iteration may not have looked at every root move; keep the last complete one
+            if (stopped) break;
+            bestMove = rootBestMove;
+            reportInfo(depth, score, bestMove, start);
+            if (Math.abs(score) >= MATE - MAX_PLY) break;
+        }
+        return bestMove;
+    }
+
+    // Publishes a finished iteration the way a UCI engine would; the pv is just the best root move
+    private void reportInfo(int depth, int score, int bestMove, long start) {
+        Consumer<UciInfo> listener = infoListener;
+        if (listener == null) return;
+        long elapsedNanos = Math.max(1L, System.nanoTime() - start);
+        info.clear();
+        info.depth = depth;
+        info.selDepth = depth;
+        info.hasScore = true;
+        info.mate = Math.abs(score) >= MATE - MAX_PLY;
+        // Mate scores count plies from the root; UCI reports moves, negative when being mated
+        info.score = info.mate ? Integer.signum(score) * ((MATE - Math.abs(score) + 1) / 2) : score;
+        info.nodes = nodes;
+        info.nps = nodes * 1_000_000_000L / elapsedNanos;
+        info.timeMillis = elapsedNanos / 1_000_000L;
+        info.pv[0] = Move.encode(Move.from(bestMove), Move.to(bestMove), Move.promotion(bestMove), 0);
+        info.pvLength = 1;
+        listener.accept(info);
+    }
+
+    private int negamax(Position pos, int depth, int ply, int alpha, int beta) {
+        if (ply > 0 && (pos.isFiftyMoveDraw() || pos.repetitionCount() > 0)) return 0;
+        boolean inCheck = pos.isInCheck(pos.getSideToMove());
+        if (inCheck) depth++;
+        if (depth <= 0 || ply >= MAX_PLY - 1) return quiescence(pos, ply, alpha, beta);
+        if (countNode()) return 0;
+
+        int[] list = moves[ply];
+        int count = MoveGenerator.generateLegalMoves(pos, list);
+        if (count == 0) return inCheck ? -MATE + ply : 0;
+        scoreMoves(pos, list, count, ply, (ply == 0) ? rootBestMove : Move.NONE);
+
+        int best = -INFINITY;
+        for (int i = 0; i < count; i++) {
+            int move = pickNext(list, scores[ply], i, count);
+            pos.makeMove(move);
+            int score = -negamax(pos, depth - 1, ply + 1, -beta, -alpha);
+            pos.unmakeMove();
+            if (stopped) return 0;
+            if (score > best) {
+                best = score;
+                if (ply == 0) rootBestMove = move;
+            }
+            if (score > alpha) alpha = score;
+            if (alpha >= beta) {
+                if (!Move.isCapture(move)) storeKiller(ply, move);
+                break;
+            }
+        }
+        return best;
+    }
+
+    // Resolves captures and promotions until the position is quiet
+    private int quiescence(Position pos, int ply, int alpha, int beta) {
+        if (countNode()) return 0;
+        int standPat = Evaluation.evaluate(pos);
+        if (standPat >= beta || ply >= MAX_PLY - 1) return standPat;
+        if (standPat > alpha) alpha = standPat;
+
+        int[] list = moves[ply];
+        int count = MoveGenerator.generateLegalMoves(pos, list);
+        int tactical = 0;
+        for (int i = 0; i < count; i++) {
+            if (Move.isCapture(list[i]) || Move.promotion(list[i]) != 0) list[tactical++] = list[i];
+        }
+        scoreMoves(pos, list, tactical, ply, Move.NONE);
+        for (int i = 0; i < tactical; i++) {
+            int move = pickNext(list, scores[ply], i, tactical);
+            pos.makeMove(move);
+            int score = -quiescence(pos, ply + 1, -beta, -alpha);
+            pos.unmakeMove();
+            if (stopped) return 0;
+            if (score >= beta) return score;
+            if (score > alpha) alpha = score;
+        }
+        return alpha;
+    }
+
+    // Counts a node and checks the budget every 1024 nodes; returns true once the search must stop
+    private boolean countNode() {
+        nodes++;
+        if ((nodes & 1023) == 0
+                && (nodes >= nodeLimit || System.nanoTime() >= deadline || generation.get() != searchGeneration)) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    // Ordering: previous best move, captures by MVV-LVA, promotions, killers, then quiet moves
+    private void scoreMoves(Position pos, int[] list, int count, int ply, int hashMove) {
+        int[] out = scores[ply];
+        for (int i = 0; i < count; i++) {
+            int move = list[i];
+            int score = 0;
+            if (move == hashMove) {
+                score = 1_000_000;
+            } else if (Move.isCapture(move)) {
+                int victim = Move.isEnPassant(move) ? Position.PAWN : Position.typeOf(pos.pieceAt(Move.to(move)));
+                int attacker = Position.typeOf(pos.pieceAt(Move.from(move)));
+                score = 100_000 + Evaluation.PIECE_VALUES[victim] * 10 - attacker;
+            } else if (Move.promotion(move) != 0) {
+                score = 90_000 + Move.promotion(move);
+            } else if (move == killers[ply][0]) {
+                score = 80_000;
+            } else if (move == killers[ply][1]) {
+                score = 79_000;
+            }
+            out[i] = score;
+        }
+    }
+
+    // Selection step: swaps the best remaining move into slot index and returns it
+    private static int pickNext(int[] list, int[] listScores, int index, int count) {
+        int best = index;
+        for (int i = index + 1; i < count; i++) {
+            if (listScores[i] > listScores[best]) best = i;
+        }
+        int move = list[best];
+        list[best] = list[index];
+        list[index] = move;
+        int score = listScores[best];
+        listScores[best] = listScores[index];
+        listScores[index] = score;
+        return move;
+    }
+
+    private void storeKiller(int ply, int move) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package chesspkg;
+
+// What bounds one engine search, mirroring the arguments of UCI "go": depth, nodes, a fixed
+// move time and the game clocks. A value of 0 leaves that limit unset. Instances are immutable.
+final class SearchLimits {
+    // Time kept back for process and pipe overhead so the side to move never flags
+    static final long SAFETY_MARGIN_MILLIS = 50;
+    // Assumed number of moves still to play when splitting the remaining clock
+    private static final int MOVES_TO_GO = 30;
+
+    static final SearchLimits NONE = new SearchLimits(0, 0L, 0L, 0L, 0L, 0L, 0L);
+
+    final int depth;
+    final long nodes;
+    final long moveTimeMillis;
+    final long whiteTimeMillis;
+    final long blackTimeMillis;
+    final long whiteIncrementMillis;
+    final long blackIncrementMillis;
+
+    private SearchLimits(int depth, long nodes, long moveTimeMillis, long whiteTimeMillis, long blackTimeMillis,
+                         long whiteIncrementMillis, long blackIncrementMillis) {
+        this.depth = depth;
+        this.nodes = nodes;
+        this.moveTimeMillis = moveTimeMillis;
+        this.whiteTimeMillis = whiteTimeMillis;
+        this.blackTimeMillis = blackTimeMillis;
+        this.whiteIncrementMillis = whiteIncrementMillis;
+        this.blackIncrementMillis = blackIncrementMillis;
+    }
+
+    SearchLimits withDepth(int depth) {
+        return new SearchLimits(depth, nodes, moveTimeMillis, whiteTimeMillis, blackTimeMillis,
+                whiteIncrementMillis, blackIncrementMillis);
+    }
+
+    SearchLimits withNodes(long nodes) {
+        return new SearchLimits(depth, nodes, moveTimeMillis, whiteTimeMillis, blackTimeMillis,
+                whiteIncrementMillis, blackIncrementMillis);
+    }
+
+    SearchLimits withMoveTime(long moveTimeMillis) {
+        return new SearchLimits(depth, nodes, moveTimeMillis, whiteTimeMillis, blackTimeMillis,
+                whiteIncrementMillis, blackIncrementMillis);
+    }
+
+    SearchLimits withClocks(long whiteTimeMillis, long blackTimeMillis, long whiteIncrementMillis, long blackIncrementMillis) {
+        return new SearchLimits(depth, nodes, moveTimeMillis, whiteTimeMillis, blackTimeMillis,
+                whiteIncrementMillis, blackIncrementMillis);
+    }
+
+    // The clocks once side has played a move it thought about for elapsedMillis: its time runs down
+    // and, as on the game clock, the increment is added
+    SearchLimits afterMove(int side, long elapsedMillis) {
+        if (!hasClock()) return this;
+        long whiteTime = whiteTimeMillis;
+        long blackTime = blackTimeMillis;
+        if (side == Position.WHITE) {
+            whiteTime = Math.max(1L, whiteTime - elapsedMillis) + whiteIncrementMillis;
+        } else {
+            blackTime = Math.max(1L, blackTime - elapsedMillis) + blackIncrementMillis;
+        }
+        return withClocks(whiteTime, blackTime, whiteIncrementMillis, blackIncrementMillis);
+    }
+
+    boolean hasClock() {
+        return whiteTimeMillis > 0 || blackTimeMillis > 0;
+    }
+
+    // Longest the given side may think: the fixed move time, capped by what its clock can afford.
+    // 0 means the search is bounded only by depth or nodes.
+    long maxTimeMillis(int sideToMove) {
+        long budget = moveTimeMillis;
+        if (hasClock()) {
+            long remaining = (sideToMove == Position.WHITE) ? whiteTimeMillis : blackTimeMillis;
+            long increment = (sideToMove == Position.WHITE) ? whiteIncrementMillis : blackIncrementMillis;
+            long share = remaining / MOVES_TO_GO + increment * 3 / 4;
+            long affordable = Math.max(1L, Math.min(share, remaining - SAFETY_MARGIN_MILLIS));
+            budget = (budget > 0) ? Math.min(budget, affordable) : affordable;
+        }
+        return budget;
+    }
+
+    // UCI "go" command for these limits; with nothing set the engine is told to search to depth 1
+    String goCommand(boolean ponder) {
+        StringBuilder go = new StringBuilder("go");
+        if (ponder) go.append(" ponder");
+        if (depth > 0) go.append(" depth ").append(depth);
+        if (nodes > 0) go.append(" nodes ").append(nodes);
+        if (moveTimeMillis > 0) go.append(" movetime ").append(moveTimeMillis);
+        if (hasClock()) {
+            go.append(" wtime ").append(whiteTimeMillis).append(" btime ").append(blackTimeMillis);
+            if (whiteIncrementMillis > 0) go.append(" winc ").append(whiteIncrementMillis);
+            if (blackIncrementMillis > 0) go.append(" binc ").append(blackIncrementMillis);
+        }
+        if (go.length() == (ponder ? 8 : 2)) go.append(" depth 1");
+        return go.toString();
+    }
+}
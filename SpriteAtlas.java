@@ -0,0 +1,66 @@
+package chesspkg;
+
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+// The twelve piece images in one strip, indexed by Position piece code and rasterized at the
+// window's output scale, so pieces stay sharp on HiDPI screens. Building one takes two steps:
+// paint() records the drawing on a detached canvas and may run on any thread; rasterize() turns
+// that into the image and, like every snapshot, must run on the FX thread.
+final class SpriteAtlas {
+    static final int PIECES = 12;
+    // Pieces draw themselves in a square of this many units
+    private static final double DESIGN_SIZE = 50.0;
+
+    // Draws one piece, by piece code, at the origin of a DESIGN_SIZE square
+    interface PiecePainter {
+        void paint(GraphicsContext gc, int piece);
+    }
+
+    private final Image image;
+    private final double squareSize;
+    private final double scale;
+    private final double cellPixels;
+
+    private SpriteAtlas(Image image, double squareSize, double scale) {
+        this.image = image;
+        this.squareSize = squareSize;
+        this.scale = scale;
+        this.cellPixels = Math.ceil(squareSize * scale);
+    }
+
+    // Draws every piece into its cell of a canvas sized in device pixels
+    static Canvas paint(double squareSize, double scale, PiecePainter painter) {
+        double cellPixels = Math.ceil(squareSize * scale);
+        Canvas canvas = new Canvas(PIECES * cellPixels, cellPixels);
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        for (int piece = 0; piece < PIECES; piece++) {
+            gc.save();
+            gc.translate(piece * cellPixels, 0);
+            gc.scale(cellPixels / DESIGN_SIZE, cellPixels / DESIGN_SIZE);
+            painter.paint(gc, piece);
+            gc.restore();
+        }
+        return canvas;
+    }
+
+    static SpriteAtlas rasterize(Canvas painted, double squareSize, double scale) {
+        SnapshotParameters params = new SnapshotParameters();
+        params.setFill(Color.TRANSPARENT);
+        return new SpriteAtlas(painted.snapshot(params, null), squareSize, scale);
+    }
+
+    // Draws piece into a size x size square; an atlas built for another size is scaled until its
+    // replacement is ready
+    void draw(GraphicsContext gc, int piece, double x, double y, double size) {
+        gc.drawImage(image, piece * cellPixels, 0, cellPixels, cellPixels, x, y, size, size);
+    }
+
+    // True if this atlas was rasterized for squares of this size at this output scale
+    boolean matches(double squareSize, double scale) {
+        return this.squareSize == squareSize && this.scale == scale;
+    }
+}
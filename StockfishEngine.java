@@ -1,171 +1,528 @@
 package chesspkg;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import javafx.scene.paint.Color;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
-public class StockfishEngine {
-    private Process engineProcess;
-    private BufferedReader processReader;
-    private BufferedWriter processWriter;
-    private int searchDepth = 10; // Adjust based on desired difficulty
+public class StockfishEngine implements ChessEngine {
+    // How long the engine may take to answer uci or isready (hash allocation included) before it counts as hung
+    static final long READY_TIMEOUT_MILLIS = 10_000;
+    // How long a search may take to send its bestmove after "stop"
+    static final long STOP_TIMEOUT_MILLIS = 2_000;
+    // How long a search bounded only by depth or nodes may run before it is stopped like a timed one
+    static final long UNTIMED_SEARCH_MILLIS = 60_000;
+    // Crashes or hangs survived by starting a new process; after that the engine stays unavailable
+    static final int MAX_RESTARTS = 3;
+    private static final long POLL_MILLIS = 100;
     
+    private final UciTransport.Launcher launcher;   // null when no engine was found
+    private volatile UciTransport transport;
+    private volatile String failureReason;
+    private volatile EngineConfig config;   // replayed into a restarted process
+    private volatile boolean closed;
+    private int restarts;
+    // When "stop" went to the running search, or 0; a bestmove must follow within STOP_TIMEOUT_MILLIS
+    private volatile long stopSentNanos;
+    private int lastBestMove;
+    private int lastPonderMove;
+    
+    // All UCI reads happen on this thread so the JavaFX thread never waits on the engine
+    private final ExecutorService ioThread = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "stockfish-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Sends "stop" when a search reaches its time budget, whatever the engine's own time management does;
+    // every search has one, so a live engine that never answers is restarted instead of waited on
+    private final ScheduledExecutorService deadlineTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "stockfish-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long searchId;           // identifies the search the pending deadline belongs to
+    // Bumped by stop(); requests from an older generation are skipped before sending "go"
+    private final AtomicInteger generation = new AtomicInteger();
+    private final Object sendLock = new Object();
+    private volatile Consumer<UciInfo> infoListener;
+    private volatile int analysisLines = 1;
+    
+    // Pondering: after each bestmove the engine keeps searching the position after its predicted reply
+    private boolean ponderEnabled;
+    private boolean pondering;       // a "go ponder" search is running and its bestmove is still unread
+    private boolean ponderStopped;   // "stop" was already sent to that search
+    private String ponderCommand;    // "position ..." line of the position being pondered
+    private long ponderSearches;
+    private long ponderHits;
+    
+    // Looks for Stockfish on PATH
     public StockfishEngine() {
+        this((String) null);
+    }
+    
+    // configuredPath is the "stockfish" engine setting, or null to look on PATH. If no engine can be
+    // started the object is still usable: isAvailable() is false and getFailureReason() says why.
+    public StockfishEngine(String configuredPath) {
+        this(launcherFor(findExecutable(configuredPath)));
+    }
+    
+    // Runs whatever engine launcher connects to, e.g. a stand-in UCI engine in a benchmark
+    StockfishEngine(UciTransport.Launcher launcher) {
+        this.launcher = launcher;
+        if (launcher == null) {
+            failureReason = "Stockfish not found; set stockfish=<path> in engine.properties or put it on PATH";
+            return;
+        }
+        startProcess();
+    }
+    
+    private static UciTransport.Launcher launcherFor(Path executable) {
+        if (executable == null) return null;
+        List<String> command = Collections.singletonList(executable.toString());
+        return () -> UciTransport.start(command);
+    }
+    
+    // The configured file if it exists, else the first "stockfish" executable on PATH; null if there is none
+    static Path findExecutable(String configuredPath) {
+        if (configuredPath != null && !configuredPath.isEmpty()) {
+            Path configured = Paths.get(configuredPath);
+            if (Files.isRegularFile(configured)) return configured;
+            System.err.println("Stockfish not found at " + configuredPath + "; looking on PATH");
+        }
+        String searchPath = System.getenv("PATH");
+        if (searchPath == null) return null;
+        for (String directory : searchPath.split(File.pathSeparator)) {
+            for (String name : new String[] { "stockfish", "stockfish.exe" }) {
+                try {
+                    Path candidate = Paths.get(directory, name);
+                    if (Files.isRegularFile(candidate) && Files.isExecutable(candidate)) return candidate;
+                } catch (InvalidPathException e) {
+                    // A malformed PATH entry cannot hold the engine
+                }
+            }
+        }
+        return null;
+    }
+    
+    // Starts the process and completes the UCI handshake; on failure the engine is left unavailable
+    private boolean startProcess() {
+        UciTransport started;
         try {
-            // Path to Stockfish executable - update this to your path
-            String stockfishPath = "Path_to_stockfish.exe"; 
-            
-            // Use ProcessBuilder instead of Runtime.exec()
-            ProcessBuilder processBuilder = new ProcessBuilder(stockfishPath);
-            processBuilder.redirectErrorStream(true); // Merge error stream with input stream
-            
-            engineProcess = processBuilder.start();
-            processReader = new BufferedReader(new InputStreamReader(engineProcess.getInputStream()));
-            processWriter = new BufferedWriter(new OutputStreamWriter(engineProcess.getOutputStream()));
-            
-            // Initialize the engine
-            sendCommand("uci");
-            sendCommand("isready");
-            waitForReady();
+            started = launcher.launch();
         } catch (IOException e) {
-            e.printStackTrace();
+            failureReason = "Stockfish could not be started: " + e.getMessage();
+            return false;
+        }
+        transport = started;
+        started.send("uci");
+        if (waitFor(UciOutputParser.UCIOK, READY_TIMEOUT_MILLIS)) {
+            started.send("isready");
+            if (waitForReady()) return true;
+        }
+        failureReason = "Stockfish did not answer the UCI handshake";
+        transport = null;
+        started.destroy();
+        return false;
+    }
+    
+    // Called on the I/O thread when the engine died or stopped answering: starts a new process and
+    // replays the options of the old one. False once the restarts are used up or the engine is closed.
+    private boolean restart() {
+        UciTransport old = transport;
+        synchronized (sendLock) {
+            transport = null;
+            pondering = false;
+            ponderStopped = false;
+        }
+        if (old != null) old.destroy();
+        if (closed || launcher == null) return false;
+        if (restarts == MAX_RESTARTS) {
+            failureReason = "Stockfish failed " + (MAX_RESTARTS + 1) + " times and was given up";
+            return false;
         }
-    }    
+        restarts++;
+        System.err.println("Stockfish stopped responding; restarting it");
+        if (!startProcess()) return false;
+        EngineConfig replayed = config;
+        synchronized (sendLock) {
+            if (replayed != null) writeOptions(replayed);
+            if (ponderEnabled) writeCommand("setoption name Ponder value true");
+            writeCommand("isready");
+        }
+        return waitForReady();
+    }
     
     private void sendCommand(String command) {
-        try {
-            processWriter.write(command + "\n");
-            processWriter.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
+        synchronized (sendLock) {
+            writeCommand(command);
         }
     }
     
-    private String readLine() {
+    // A command the dead process cannot take is dropped; the reader then sees the end of its output
+    private void writeCommand(String command) {
+        UciTransport current = transport;
+        if (current != null) current.send(command);
+    }
+    
+    private boolean waitForReady() {
+        return waitFor(UciOutputParser.READYOK, READY_TIMEOUT_MILLIS);
+    }
+    
+    // True once a line of the given kind arrives; false if the output ends or the timeout passes first
+    private boolean waitFor(int kind, long timeoutMillis) {
+        UciTransport current = transport;
+        if (current == null) return false;
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
         try {
-            return processReader.readLine();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
+            while (true) {
+                long remainingMillis = (deadline - System.nanoTime()) / 1_000_000L;
+                if (remainingMillis <= 0) return false;
+                UciTransport.Event event = current.poll(remainingMillis);
+                if (event == null) return false;
+                int received = event.kind;
+                current.recycle(event);
+                if (received == kind) return true;
+                if (received == UciOutputParser.EOF) return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         }
     }
     
-    private void waitForReady() {
-        String line;
-        try {
-            while ((line = processReader.readLine()) != null) {
-                if (line.equals("readyok")) break;
+    // Health check: completes with true if the engine answers isready within the timeout.
+    // An engine that fails it should be destroyed, which also frees the I/O thread.
+    public CompletableFuture<Boolean> isReadyAsync(long timeoutMillis) {
+        if (!isAvailable()) return CompletableFuture.completedFuture(false);
+        return CompletableFuture.supplyAsync(() -> {
+            finishPondering();
+            sendCommand("isready");
+            return waitFor(UciOutputParser.READYOK, timeoutMillis);
+        }, ioThread).completeOnTimeout(false, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    // True once the Stockfish process has started and is still running
+    public boolean isAvailable() {
+        UciTransport current = transport;
+        return current != null && current.isAlive();
+    }
+    
+    // Why the engine is unavailable, or null if it never failed
+    public String getFailureReason() {
+        return failureReason;
+    }
+
+    // Receives every info line of a search on the I/O thread; the UciInfo is reused for the next line
+    @Override
+    public void setInfoListener(Consumer<UciInfo> listener) {
+        this.infoListener = listener;
+    }
+    
+    // Turns pondering on or off; takes effect from the next bestmove
+    public void setPonder(boolean enabled) {
+        synchronized (sendLock) {
+            if (enabled != ponderEnabled && isAvailable()) {
+                writeCommand("setoption name Ponder value " + enabled);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            ponderEnabled = enabled;
         }
     }
     
-    // Set search depth (difficulty level)
-    public void setSearchDepth(int depth) {
-        this.searchDepth = depth;
+    // Share of pondered positions that the opponent actually played
+    public double getPonderHitRate() {
+        synchronized (sendLock) {
+            return (ponderSearches == 0) ? 0.0 : (double) ponderHits / ponderSearches;
+        }
     }
     
-    // Convert chess board to FEN notation including turn and castling rights
-    public String boardToFEN(ChessPiece[][] board, boolean whiteTurn, CastlingRights castlingRights) {
-        StringBuilder fen = new StringBuilder();
-        
-        // Board position
-        for (int i = 0; i < 8; i++) {
-            int emptyCount = 0;
-            for (int j = 0; j < 8; j++) {
-                ChessPiece piece = board[i][j];
-                if (piece == null) {
-                    emptyCount++;
-                } else {
-                    if (emptyCount > 0) {
-                        fen.append(emptyCount);
-                        emptyCount = 0;
-                    }
-                    char pieceChar = getPieceChar(piece);
-                    fen.append(pieceChar);
-                }
+    public long getPonderSearches() {
+        synchronized (sendLock) {
+            return ponderSearches;
+        }
+    }
+    
+    public long getPonderHits() {
+        synchronized (sendLock) {
+            return ponderHits;
+        }
+    }
+    
+    // UCI "position" command for the game leading to pos, e.g. "position startpos moves e2e4 e7e5".
+    // Sending the moves rather than a bare FEN gives the engine the repetition history.
+    static String positionCommand(Position pos) {
+        StringBuilder command = new StringBuilder(32 + pos.getPly() * 6);
+        if (pos.isFromStartPosition()) {
+            command.append("position startpos");
+        } else {
+            command.append("position fen ").append(pos.getRootFen());
+        }
+        if (pos.getPly() > 0) {
+            command.append(" moves");
+            for (int i = 0; i < pos.getPly(); i++) {
+                Move.appendUci(command.append(' '), pos.getMoveAt(i));
             }
-            if (emptyCount > 0) {
-                fen.append(emptyCount);
+        }
+        return command.toString();
+    }
+    
+    @Override
+    public String getBestMove(Position pos, SearchLimits limits) {
+        return getBestMove(positionCommand(pos), pos.getSideToMove(), limits, limits.maxTimeMillis(pos.getSideToMove()),
+                generation.get());
+    }
+    
+    @Override
+    public CompletableFuture<String> getBestMoveAsync(Position pos, SearchLimits limits) {
+        int requestGeneration = generation.get();
+        String command = positionCommand(pos);
+        int side = pos.getSideToMove();
+        long maxTimeMillis = limits.maxTimeMillis(side);
+        return CompletableFuture.supplyAsync(() -> getBestMove(command, side, limits, maxTimeMillis, requestGeneration), ioThread);
+    }
+    
+    // Sends Threads and Hash, and remembers MultiPV for analyzeAsync; the engine allocates its hash
+    // before answering isready, so this runs on the I/O thread behind any search in progress
+    public void configure(EngineConfig config) {
+        this.config = config;
+        analysisLines = config.multiPv;
+        if (!isAvailable()) return;
+        ioThread.execute(() -> {
+            synchronized (sendLock) {
+                writeOptions(config);
+                writeCommand("isready");
             }
-            if (i < 7) fen.append('/');
+            if (!waitForReady()) restart();
+        });
+    }
+    
+    // Called with sendLock held
+    private void writeOptions(EngineConfig config) {
+        writeCommand("setoption name Threads value " + config.threads);
+        writeCommand("setoption name Hash value " + config.hashMb);
+    }
+    
+    // Searches pos without a limit until stop() is called, passing the configured number of lines
+    // to listener rather than the info listener. Pondering is abandoned while analysing.
+    public CompletableFuture<Void> analyzeAsync(Position pos, Consumer<UciInfo> listener) {
+        int requestGeneration = generation.get();
+        String command = positionCommand(pos);
+        int lines = analysisLines;
+        return CompletableFuture.runAsync(() -> analyze(command, lines, listener, requestGeneration), ioThread);
+    }
+    
+    private void analyze(String positionCommand, int lines, Consumer<UciInfo> listener, int requestGeneration) {
+        finishPondering();
+        synchronized (sendLock) {
+            if (generation.get() != requestGeneration) return;
+            writeCommand("setoption name MultiPV value " + lines);
+            writeCommand(positionCommand);
+            stopSentNanos = 0L;
+            writeCommand("go infinite");
         }
-        
-        // Active color
-        fen.append(whiteTurn ? " w " : " b ");
-        
-        // Castling availability
-        StringBuilder castling = new StringBuilder();
-        if (castlingRights.canCastle(Color.WHITE, true)) castling.append("K");
-        if (castlingRights.canCastle(Color.WHITE, false)) castling.append("Q");
-        if (castlingRights.canCastle(Color.BLACK, true)) castling.append("k");
-        if (castlingRights.canCastle(Color.BLACK, false)) castling.append("q");
-        
-        if (castling.length() == 0) {
-            fen.append("- ");
-        } else {
-            fen.append(castling).append(" ");
+        if (!readBestMove(listener)) {
+            restart();
+            return;
         }
-        
-        // En passant target square (not implemented yet)
-        fen.append("- ");
-        
-        // Halfmove clock and fullmove number
-        fen.append("0 1");
-        
-        return fen.toString();
+        // Game moves are always searched single-line, which is what playing strength needs
+        sendCommand("setoption name MultiPV value 1");
     }
     
-    private char getPieceChar(ChessPiece piece) {
-        char pieceChar = ' ';
-        if (piece instanceof Pawn) pieceChar = 'p';
-        else if (piece instanceof Rook) pieceChar = 'r';
-        else if (piece instanceof Knight) pieceChar = 'n';
-        else if (piece instanceof Bishop) pieceChar = 'b';
-        else if (piece instanceof Queen) pieceChar = 'q';
-        else if (piece instanceof King) pieceChar = 'k';
-        
-        return piece.color == Color.WHITE ? Character.toUpperCase(pieceChar) : pieceChar;
+    // Queued behind any search in progress, so the engine is never reset mid-search
+    @Override
+    public void newGame() {
+        if (!isAvailable()) return;
+        stop();
+        ioThread.execute(() -> {
+            finishPondering();
+            sendCommand("ucinewgame");
+            sendCommand("isready");
+            if (!waitForReady()) restart();
+        });
     }
     
-    public String getBestMove(String fen) {
-        sendCommand("position fen " + fen);
-        sendCommand("go depth " + searchDepth);
-        
-        String line;
-        String bestMove = null;
-        
-        try {
-            while ((line = processReader.readLine()) != null) {
-                if (line.startsWith("bestmove")) {
-                    bestMove = line.split("\\s+")[1];
-                    break;
+    // Sends "stop" so a running search answers at once; its bestmove is still read off the pipe.
+    // This also ends pondering, which is what a reset or engine change wants.
+    @Override
+    public void stop() {
+        synchronized (sendLock) {
+            generation.incrementAndGet();
+            if (!isAvailable()) return;
+            writeCommand("stop");
+            stopSentNanos = System.nanoTime();
+            if (pondering) ponderStopped = true;
+        }
+    }
+    
+    // Null if the request was cancelled, or if the engine failed twice in a row (it is restarted after each)
+    private String getBestMove(String positionCommand, int side, SearchLimits limits, long maxTimeMillis,
+                               int requestGeneration) {
+        if (transport == null) return null;
+        long searchStart = System.nanoTime();
+        boolean ponderHit = false;
+        synchronized (sendLock) {
+            if (generation.get() != requestGeneration) return null;
+            if (pondering) {
+                ponderSearches++;
+                // The same game line means the predicted reply was played
+                ponderHit = !ponderStopped && positionCommand.equals(ponderCommand);
+                if (ponderHit) {
+                    // The running search simply becomes the real one
+                    ponderHits++;
+                    writeCommand("ponderhit");
+                    stopSentNanos = 0L;
+                    pondering = false;
+                    startDeadline(maxTimeMillis);
                 }
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+        }
+        if (!ponderHit) {
+            finishPondering();
+            if (!startSearch(positionCommand, limits, maxTimeMillis, requestGeneration)) return null;
         }
         
+        boolean answered = readBestMove(infoListener);
+        endSearch();
+        if (!answered) {
+            // A crashed or hung engine is replaced and asked once more, from scratch
+            if (!restart() || !startSearch(positionCommand, limits, maxTimeMillis, requestGeneration)) return null;
+            answered = readBestMove(infoListener);
+            endSearch();
+            if (!answered) {
+                restart();
+                return null;
+            }
+        }
+        if (lastBestMove == Move.NONE) return null;
+        String bestMove = Move.toUci(lastBestMove);
+        if (lastPonderMove != Move.NONE) {
+            // The pondered position is ours to move again, on the clocks as they stand after this move
+            long elapsedMillis = (System.nanoTime() - searchStart) / 1_000_000L;
+            startPondering(positionCommand, bestMove, Move.toUci(lastPonderMove),
+                    limits.afterMove(side, elapsedMillis), requestGeneration);
+        }
         return bestMove;
     }
     
-    // Convert algebraic notation to board coordinates
-    public int[] algebraicToCoords(String algebraic) {
-        int col = algebraic.charAt(0) - 'a';
-        int row = 8 - Character.getNumericValue(algebraic.charAt(1));
-        return new int[]{row, col};
+    private boolean startSearch(String positionCommand, SearchLimits limits, long maxTimeMillis, int requestGeneration) {
+        synchronized (sendLock) {
+            if (generation.get() != requestGeneration) return false;
+            writeCommand(positionCommand);
+            stopSentNanos = 0L;
+            writeCommand(limits.goCommand(false));
+            startDeadline(maxTimeMillis);
+            return true;
+        }
     }
     
-    // Close the engine process
-    public void close() {
-        sendCommand("quit");
+    private void endSearch() {
+        synchronized (sendLock) {
+            searchId++; // the deadline of this search must not stop the next one
+        }
+    }
+    
+    // Called with sendLock held, right after the search for the current request was started
+    private void startDeadline(long maxTimeMillis) {
+        long budgetMillis = (maxTimeMillis > 0) ? maxTimeMillis : UNTIMED_SEARCH_MILLIS;
+        long id = ++searchId;
+        deadlineTimer.schedule(() -> {
+            synchronized (sendLock) {
+                if (searchId == id && isAvailable()) {
+                    writeCommand("stop");
+                    stopSentNanos = System.nanoTime();
+                }
+            }
+        }, budgetMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    // Stops a ponder search that is not going to be used and reads its bestmove, which belongs to no request
+    private void finishPondering() {
+        synchronized (sendLock) {
+            if (!pondering) return;
+            if (!ponderStopped) {
+                writeCommand("stop");
+                stopSentNanos = System.nanoTime();
+            }
+            pondering = false;
+            ponderStopped = false;
+        }
+        if (!readBestMove(null)) restart();
+    }
+    
+    // Reads up to the next bestmove, passing info lines to listener unless it is null. False if the
+    // engine's output ends, or if no bestmove came within STOP_TIMEOUT_MILLIS of a "stop".
+    private boolean readBestMove(Consumer<UciInfo> listener) {
+        UciTransport current = transport;
+        if (current == null) return false;
         try {
-            if (!engineProcess.waitFor(5, TimeUnit.SECONDS)) {
-                engineProcess.destroyForcibly();
+            while (true) {
+                UciTransport.Event event = current.poll(POLL_MILLIS);
+                if (event == null) {
+                    // Only a quiet engine can be late: a bestmove already queued (say, from a ponder
+                    // search stopped long before this request) is read however old the stop is
+                    long stopSent = stopSentNanos;
+                    if (stopSent != 0L && System.nanoTime() - stopSent > STOP_TIMEOUT_MILLIS * 1_000_000L) return false;
+                    continue;
+                }
+                int kind = event.kind;
+                if (kind == UciOutputParser.BESTMOVE) {
+                    lastBestMove = event.bestMove;
+                    lastPonderMove = event.ponderMove;
+                } else if (kind == UciOutputParser.INFO && listener != null) {
+                    listener.accept(event.info);
+                }
+                current.recycle(event);
+                if (kind == UciOutputParser.BESTMOVE) return true;
+                if (kind == UciOutputParser.EOF) return false;
             }
         } catch (InterruptedException e) {
-            engineProcess.destroyForcibly();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    // Searches the position after our move and the expected reply while the opponent thinks
+    private void startPondering(String positionCommand, String bestMove, String ponderMove,
+                                SearchLimits limits, int requestGeneration) {
+        String command = positionCommand + (positionCommand.contains(" moves") ? " " : " moves ")
+                + bestMove + " " + ponderMove;
+        synchronized (sendLock) {
+            if (!ponderEnabled || generation.get() != requestGeneration) return;
+            writeCommand(command);
+            stopSentNanos = 0L;
+            writeCommand(limits.goCommand(true));
+            ponderCommand = command;
+            pondering = true;
+            ponderStopped = false;
         }
     }
+    
+    // Kills the process without the quit handshake, for engines that stopped responding
+    public void destroy() {
+        closed = true;
+        ioThread.shutdownNow();
+        deadlineTimer.shutdownNow();
+        UciTransport current = transport;
+        if (current != null) current.destroy();
+    }
+    
+    // Close the engine process
+    @Override
+    public void close() {
+        closed = true;
+        ioThread.shutdownNow();
+        deadlineTimer.shutdownNow();
+        UciTransport current = transport;
+        if (current != null) current.close(5000);
+    }
 }
\ No newline at end of file
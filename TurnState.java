@@ -0,0 +1,73 @@
+package chesspkg;
+
+// Everything the game needs to know about the side to move, computed once per ply:
+// the legal move list, check state and whether the game is over.
+final class TurnState {
+    enum Status { ONGOING, CHECKMATE, STALEMATE, THREEFOLD_REPETITION, FIFTY_MOVE_RULE }
+
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+    private int moveCount;
+    private int sideToMove;
+    private boolean inCheck;
+    private Status status = Status.ONGOING;
+
+    void update(Position pos) {
+        moveCount = MoveGenerator.generateLegalMoves(pos, moves);
+        sideToMove = pos.getSideToMove();
+        inCheck = pos.isInCheck(sideToMove);
+        if (moveCount == 0) {
+            status = inCheck ? Status.CHECKMATE : Status.STALEMATE;
+        } else if (pos.isThreefoldRepetition()) {
+            status = Status.THREEFOLD_REPETITION;
+        } else if (pos.isFiftyMoveDraw()) {
+            status = Status.FIFTY_MOVE_RULE;
+        } else {
+            status = Status.ONGOING;
+        }
+    }
+
+    int getSideToMove() {
+        return sideToMove;
+    }
+
+    boolean isInCheck() {
+        return inCheck;
+    }
+
+    Status getStatus() {
+        return status;
+    }
+
+    int getMoveCount() {
+        return moveCount;
+    }
+
+    int getMove(int index) {
+        return moves[index];
+    }
+
+    // Destination squares of the legal moves starting on sq, as a bitboard
+    long targetsFrom(int sq) {
+        long targets = 0L;
+        for (int i = 0; i < moveCount; i++) {
+            if (Move.from(moves[i]) == sq) targets |= 1L << Move.to(moves[i]);
+        }
+        return targets;
+    }
+
+    // Legal move matching the squares; promotion is only compared for promoting moves
+    int findMove(int from, int to, int promotion) {
+        for (int i = 0; i < moveCount; i++) {
+            int move = moves[i];
+            if (Move.from(move) == from && Move.to(move) == to
+                    && (Move.promotion(move) == 0 || Move.promotion(move) == promotion)) {
+                return move;
+            }
+        }
+        return Move.NONE;
+    }
+
+    int findUciMove(String uci) {
+        return Move.fromUci(uci, moves, moveCount);
+    }
+}
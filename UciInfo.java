@@ -0,0 +1,58 @@
+package chesspkg;
+
+// One "info" line from a UCI engine. A single instance is refilled for every line,
+// so listeners must copy out whatever they want to keep.
+final class UciInfo {
+    static final int MAX_PV = 64;
+
+    int depth;
+    int selDepth;
+    int multiPv = 1;
+    boolean hasScore;
+    boolean mate;            // score is "mate N" (moves, negative when being mated) instead of centipawns
+    int score;
+    boolean lowerBound;
+    boolean upperBound;
+    long nodes;
+    long nps;
+    int hashFull;            // permille
+    long timeMillis;
+    // Principal variation as packed moves (from, to and promotion only; no flags)
+    final int[] pv = new int[MAX_PV];
+    int pvLength;
+
+    void clear() {
+        depth = selDepth = 0;
+        multiPv = 1;
+        hasScore = mate = lowerBound = upperBound = false;
+        score = 0;
+        nodes = nps = timeMillis = 0L;
+        hashFull = 0;
+        pvLength = 0;
+    }
+
+    void copyFrom(UciInfo other) {
+        depth = other.depth;
+        selDepth = other.selDepth;
+        multiPv = other.multiPv;
+        hasScore = other.hasScore;
+        mate = other.mate;
+        score = other.score;
+        lowerBound = other.lowerBound;
+        upperBound = other.upperBound;
+        nodes = other.nodes;
+        nps = other.nps;
+        hashFull = other.hashFull;
+        timeMillis = other.timeMillis;
+        pvLength = other.pvLength;
+        System.arraycopy(other.pv, 0, pv, 0, pvLength);
+    }
+
+    // Appends the principal variation in UCI notation, space separated
+    void appendPv(StringBuilder sb) {
+        for (int i = 0; i < pvLength; i++) {
+            if (i > 0) sb.append(' ');
+            Move.appendUci(sb, pv[i]);
+        }
+    }
+}
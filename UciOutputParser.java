@@ -0,0 +1,205 @@
+package chesspkg;
+
+import java.io.IOException;
+import java.io.Reader;
+
+// Streaming parser for UCI engine output. Lines are assembled in a reusable char buffer and
+// tokenized in place, so steady-state parsing allocates nothing however fast the engine prints.
+final class UciOutputParser {
+    static final int EOF = -1;
+    static final int OTHER = 0;
+    static final int INFO = 1;
+    static final int BESTMOVE = 2;
+    static final int READYOK = 3;
+    static final int UCIOK = 4;
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int bufferPos;
+    private int bufferEnd;
+    private char[] line = new char[512];
+    private int lineLength;
+    // Current token is line[tokenStart, tokenEnd); cursor is where the next token search begins
+    private int tokenStart;
+    private int tokenEnd;
+    private int cursor;
+
+    private final UciInfo info = new UciInfo();
+    private int bestMove;
+    private int ponderMove;
+
+    UciOutputParser(Reader in) {
+        this.in = in;
+    }
+
+    // Reads and classifies the next line; the matching accessor is valid until the next call
+    int next() throws IOException {
+        if (!readLine()) return EOF;
+        cursor = 0;
+        if (!nextToken()) return OTHER;
+        if (tokenIs("info")) {
+            parseInfo();
+            return INFO;
+        }
+        if (tokenIs("bestmove")) {
+            parseBestMove();
+            return BESTMOVE;
+        }
+        if (tokenIs("readyok")) return READYOK;
+        if (tokenIs("uciok")) return UCIOK;
+        return OTHER;
+    }
+
+    UciInfo info() {
+        return info;
+    }
+
+    // Packed move (no flags) from the last bestmove line, or Move.NONE for "(none)"
+    int bestMove() {
+        return bestMove;
+    }
+
+    int ponderMove() {
+        return ponderMove;
+    }
+
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        while (true) {
+            if (bufferPos == bufferEnd) {
+                int read = in.read(buffer, 0, buffer.length);
+                if (read <= 0) return lineLength > 0;
+                bufferPos = 0;
+                bufferEnd = read;
+            }
+            char c = buffer[bufferPos++];
+            if (c == '\n') return true;
+            if (c == '\r') continue;
+            if (lineLength == line.length) {
+                char[] grown = new char[line.length * 2];
+                System.arraycopy(line, 0, grown, 0, lineLength);
+                line = grown;
+            }
+            line[lineLength++] = c;
+        }
+    }
+
+    private boolean nextToken() {
+        int i = cursor;
+        while (i < lineLength && line[i] <= ' ') i++;
+        if (i == lineLength) {
+            cursor = i;
+            return false;
+        }
+        tokenStart = i;
+        while (i < lineLength && line[i] > ' ') i++;
+        tokenEnd = i;
+        cursor = i;
+        return true;
+    }
+
+    private boolean tokenIs(String word) {
+        int length = tokenEnd - tokenStart;
+        if (length != word.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (line[tokenStart + i] != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private long tokenLong() {
+        long value = 0;
+        int i = tokenStart;
+        boolean negative = i < tokenEnd && line[i] == '-';
+        if (negative) i++;
+        for (; i < tokenEnd; i++) {
+            char c = line[i];
+            if (c < '0' || c > '9') break;
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private long nextLong() {
+        return nextToken() ? tokenLong() : 0L;
+    }
+
+    private int nextInt() {
+        return (int) nextLong();
+    }
+
+    private void parseInfo() {
+        info.clear();
+        while (nextToken()) {
+            if (tokenIs("depth")) info.depth = nextInt();
+            else if (tokenIs("seldepth")) info.selDepth = nextInt();
+            else if (tokenIs("multipv")) info.multiPv = nextInt();
+            else if (tokenIs("nodes")) info.nodes = nextLong();
+            else if (tokenIs("nps")) info.nps = nextLong();
+            else if (tokenIs("hashfull")) info.hashFull = nextInt();
+            else if (tokenIs("time")) info.timeMillis = nextLong();
+            else if (tokenIs("score")) parseScore();
+            else if (tokenIs("pv")) parsePv();
+            else if (tokenIs("string")) return; // free text runs to the end of the line
+            // Anything else (currmove, tbhits, cpuload, ...) is skipped token by token
+        }
+    }
+
+    private void parseScore() {
+        while (nextToken()) {
+            if (tokenIs("cp") || tokenIs("mate")) {
+                info.mate = tokenIs("mate");
+                info.score = nextInt();
+                info.hasScore = true;
+            } else if (tokenIs("lowerbound")) {
+                info.lowerBound = true;
+            } else if (tokenIs("upperbound")) {
+                info.upperBound = true;
+            } else {
+                // Not part of the score: step back so parseInfo sees this token
+                cursor = tokenStart;
+                return;
+            }
+        }
+    }
+
+    // The pv normally ends the line; stop at the first token that is not a move just in case
+    private void parsePv() {
+        while (nextToken()) {
+            int move = tokenMove();
+            if (move == Move.NONE) {
+                cursor = tokenStart;
+                return;
+            }
+            if (info.pvLength < UciInfo.MAX_PV) info.pv[info.pvLength++] = move;
+        }
+    }
+
+    private void parseBestMove() {
+        bestMove = nextToken() ? tokenMove() : Move.NONE;
+        ponderMove = Move.NONE;
+        if (nextToken() && tokenIs("ponder") && nextToken()) ponderMove = tokenMove();
+    }
+
+    // Token as a packed move, or Move.NONE if it is not a UCI move
+    private int tokenMove() {
+        int length = tokenEnd - tokenStart;
+        if (length != 4 && length != 5) return Move.NONE;
+        int from = tokenSquare(tokenStart);
+        int to = tokenSquare(tokenStart + 2);
+        if (from < 0 || to < 0) return Move.NONE;
+        int promotion = 0;
+        if (length == 5) {
+            promotion = "pnbrqk".indexOf(line[tokenStart + 4]);
+            if (promotion < Position.KNIGHT || promotion > Position.QUEEN) return Move.NONE;
+        }
+        return Move.encode(from, to, promotion, 0);
+    }
+
+    private int tokenSquare(int index) {
+        int file = line[index] - 'a';
+        int rank = line[index + 1] - '1';
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) return -1;
+        return (7 - rank) * 8 + file;
+    }
+}
@@ -0,0 +1,192 @@
+package chesspkg;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// One UCI engine, normally a process (an in-process engine can be connected by streams instead).
+// Commands are written to its input; a dedicated reader thread parses its output into a bounded
+// queue of events, which the caller takes with a timeout, so a hung or dead engine can never block
+// the caller for longer than it chose to wait. Events come from a fixed pool and go back with
+// recycle(), keeping the read path allocation-free. When the queue is full, info lines are dropped
+// (the next one supersedes them anyway) while every other line waits for room.
+final class UciTransport {
+    static final int QUEUE_CAPACITY = 256;
+
+    // Starts a fresh engine; StockfishEngine calls it again to replace one that crashed or hung
+    interface Launcher {
+        UciTransport launch() throws IOException;
+    }
+
+    // A parsed output line; valid until passed to recycle()
+    static final class Event {
+        int kind;                          // one of the UciOutputParser kinds
+        final UciInfo info = new UciInfo();
+        int bestMove;
+        int ponderMove;
+    }
+
+    private static final Event END = new Event();
+
+    static {
+        END.kind = UciOutputParser.EOF;
+    }
+
+    private final Process process;         // null for an engine connected by streams
+    private final InputStream fromEngine;
+    private final OutputStream toEngine;
+    private final BufferedWriter writer;
+    private final BlockingQueue<Event> events = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    // Queue capacity plus the event the reader fills and the one the caller holds
+    private final BlockingQueue<Event> free = new ArrayBlockingQueue<>(QUEUE_CAPACITY + 2);
+    private long droppedInfoLines;   // reader thread only
+    private volatile boolean ended;   // the engine's output has closed; poll() reports EOF from here on
+    private volatile boolean destroyed;
+    // Interrupted when the engine is torn down, so it cannot stay blocked on a queue nobody polls
+    private final Thread reader;
+
+    private UciTransport(Process process, InputStream fromEngine, OutputStream toEngine) {
+        this.process = process;
+        this.fromEngine = fromEngine;
+        this.toEngine = toEngine;
+        this.writer = new BufferedWriter(new OutputStreamWriter(toEngine));
+        for (int i = 0; i < QUEUE_CAPACITY + 2; i++) free.add(new Event());
+        reader = new Thread(this::readLoop, "uci-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Runs command (the executable and its arguments) as the engine process
+    static UciTransport start(List<String> command) throws IOException {
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.redirectErrorStream(true); // Merge error stream with input stream
+        Process process = processBuilder.start();
+        return new UciTransport(process, process.getInputStream(), process.getOutputStream());
+    }
+
+    // An engine running in this JVM: its output is read from fromEngine, commands go to toEngine.
+    // Closing either stream is how destroy() ends it.
+    static UciTransport connect(InputStream fromEngine, OutputStream toEngine) {
+        return new UciTransport(null, fromEngine, toEngine);
+    }
+
+    // Parses until the engine's output ends
+    private void readLoop() {
+        UciOutputParser output = new UciOutputParser(new InputStreamReader(fromEngine));
+        try {
+            while (true) {
+                int kind;
+                try {
+                    kind = output.next();
+                } catch (IOException e) {
+                    kind = UciOutputParser.EOF;
+                }
+                if (kind == UciOutputParser.EOF) {
+                    ended = true;
+                    reportDroppedInfoLines();
+                    return;
+                }
+                Event event = free.take();
+                event.kind = kind;
+                if (kind == UciOutputParser.INFO) {
+                    event.info.copyFrom(output.info());
+                    if (!events.offer(event)) {
+                        free.add(event);
+                        droppedInfoLines++;
+                    }
+                    continue;
+                }
+                if (kind == UciOutputParser.BESTMOVE) {
+                    event.bestMove = output.bestMove();
+                    event.ponderMove = output.ponderMove();
+                }
+                events.put(event);
+            }
+        } catch (InterruptedException e) {
+            // destroy() or close() tore the engine down while the reader waited on a queue
+            ended = true;
+        }
+    }
+
+    // The engine has quit or been killed for a restart; say if the caller could not keep up with it
+    private void reportDroppedInfoLines() {
+        if (droppedInfoLines > 0) {
+            System.err.println("UCI engine output ended; " + droppedInfoLines
+                    + " info lines were dropped because the reader fell behind");
+        }
+    }
+
+    // False if the command could not be written because the process is gone
+    boolean send(String command) {
+        try {
+            writer.write(command);
+            writer.write('\n');
+            writer.flush();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Next event, or null if none arrives within timeoutMillis. Once the output has ended every call
+    // returns an EOF event at once.
+    Event poll(long timeoutMillis) throws InterruptedException {
+        if (ended && events.isEmpty()) return END;
+        Event event = events.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (event == null && ended) return END;
+        return event;
+    }
+
+    void recycle(Event event) {
+        if (event != END) free.offer(event);
+    }
+
+    boolean isAlive() {
+        return (process != null) ? process.isAlive() : !ended && !destroyed;
+    }
+
+    // Kills the engine at once; the reader thread sees the end of output, or is interrupted if it is
+    // waiting for the caller to take an event, and finishes
+    void destroy() {
+        destroyed = true;
+        reader.interrupt();
+        if (process != null) {
+            process.destroyForcibly();
+            return;
+        }
+        try {
+            toEngine.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        try {
+            fromEngine.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    // Sends quit and waits up to timeoutMillis for the engine to exit before killing it
+    void close(long timeoutMillis) {
+        if (isAlive()) send("quit");
+        if (process == null) {
+            destroy();
+            return;
+        }
+        try {
+            if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) process.destroyForcibly();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        } finally {
+            reader.interrupt();
+        }
+    }
+}
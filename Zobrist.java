@@ -0,0 +1,23 @@
+package chesspkg;
+
+import java.util.SplittableRandom;
+
+// Random keys for 64-bit Zobrist position hashing; the fixed seed keeps keys stable across runs
+final class Zobrist {
+    static final long[][] PIECE_SQUARE = new long[12][64];
+    static final long[] CASTLING = new long[16];
+    static final long[] EN_PASSANT_FILE = new long[8];
+    static final long SIDE_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED_C0DE_CAFEL);
+        for (long[] squares : PIECE_SQUARE) {
+            for (int sq = 0; sq < 64; sq++) squares[sq] = random.nextLong();
+        }
+        for (int i = 0; i < CASTLING.length; i++) CASTLING[i] = random.nextLong();
+        for (int i = 0; i < EN_PASSANT_FILE.length; i++) EN_PASSANT_FILE[i] = random.nextLong();
+        SIDE_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {}
+}
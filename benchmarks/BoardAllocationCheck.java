@@ -0,0 +1,84 @@
+package chesspkg;
+
+import java.nio.file.Files;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+
+// Allocation check for the board's incremental frames: starts the game with -Dchess.checkAllocations,
+// plays a two-player game by clicking squares (selections, deselections, moves with their animations,
+// a capture and castling) and exits non-zero if any frame past the warm-up allocated on the FX
+// thread, or if no frame could be measured. Like the game it needs a display.
+// Usage: java chesspkg.BoardAllocationCheck
+public final class BoardAllocationCheck {
+    // Longer than a move animation, so every click lands on a settled board and its own pulse
+    private static final long STEP_MILLIS = 300;
+    // Selecting and deselecting a piece this often first lets the board's warm-up frames pass
+    private static final int WARMUP_TOGGLES = 16;
+    private static final String[] GAME = {
+        "e2e4", "e7e5", "g1f3", "b8c6", "f1b5", "a7a6", "b5c6", "d7c6", "e1g1", "f7f6", "d2d4", "e5d4"
+    };
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("chess.checkAllocations", "true");
+        // Keep the check's searches out of the player's result cache
+        System.setProperty("chess.cache", Files.createTempFile("board-check", ".cache").toString());
+        // The launcher refuses a main class that is an Application when JavaFX is on the class path
+        Application.launch(Driver.class, args);
+    }
+
+    public static final class Driver extends Application {
+        private ChessGame game;
+
+        @Override
+        public void start(Stage stage) throws Exception {
+            game = new ChessGame();
+            game.start(stage);
+            game.playWithoutAI();
+            Timeline script = new Timeline();
+            int step = 0;
+            for (int i = 0; i < WARMUP_TOGGLES; i++) {
+                step = click(script, step, "e2");
+                step = click(script, step, "e2");
+            }
+            for (String move : GAME) {
+                String from = move.substring(0, 2);
+                // Select, deselect, select again, then move: overlay-only frames, then a piece frame
+                step = click(script, step, from);
+                step = click(script, step, from);
+                step = click(script, step, from);
+                step = click(script, step, move.substring(2, 4));
+            }
+            script.getKeyFrames().add(new KeyFrame(Duration.millis((step + 1) * STEP_MILLIS), e -> finish()));
+            script.play();
+        }
+
+        // Clicks the named square on a pulse of its own; the game's row 0 is rank 8
+        private int click(Timeline script, int step, String square) {
+            int col = square.charAt(0) - 'a';
+            int row = '8' - square.charAt(1);
+            script.getKeyFrames().add(new KeyFrame(Duration.millis((step + 1) * STEP_MILLIS), e -> game.clickSquare(row, col)));
+            return step + 1;
+        }
+
+        private void finish() {
+            long checked = game.getBoardCheckedFrames();
+            long allocating = game.getBoardAllocatingFrames();
+            boolean passed = checked > 0 && allocating == 0;
+            System.out.printf("Incremental frames checked: %d, allocating: %d (worst %d bytes)%n",
+                    checked, allocating, game.getBoardWorstFrameBytes());
+            if (checked == 0) System.out.println("No frame was measured: per-thread allocation counting is unavailable");
+            System.out.println(passed ? "Board allocation check passed" : "Board allocation check FAILED");
+            try {
+                game.stop();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            Platform.exit();
+            System.exit(passed ? 0 : 1);
+        }
+    }
+}
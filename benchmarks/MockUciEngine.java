@@ -0,0 +1,296 @@
+package chesspkg;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channel;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Stand-in UCI engine for exercising the StockfishEngine bridge without the real binary, either as a
+// child process (main) or inside the JVM over a pair of pipes (inProcess). Each search prints its info
+// lines, waits the configured latency and answers with the first legal move of the position, with
+// --ponder also naming the first legal reply to it as the move to ponder on; it honours stop,
+// ponderhit and go infinite. A fault can be injected once a number of searches have
+// been answered normally: hang (never answer anything again), crash (exit mid-search) or garbage
+// (malformed lines mixed into every later search's output).
+// Usage: java chesspkg.MockUciEngine [--latency MS] [--info N] [--script FILE] [--ponder]
+//                                    [--fault none|hang|crash|garbage] [--fault-after N]
+// A script file holds the output lines of one search; "{move}" is replaced by the move played. A
+// bestmove line in it is the search's answer, sent in place of the generated one.
+public final class MockUciEngine {
+    enum Fault { NONE, HANG, CRASH, GARBAGE }
+
+    static final class Options {
+        long latencyMillis;
+        int infoLines = 5;
+        List<String> script;        // replaces the generated info lines when set
+        boolean ponder;             // answer "bestmove X ponder Y"
+        Fault fault = Fault.NONE;
+        int faultAfter;             // searches answered normally before the fault strikes
+
+        static Options parse(String[] args) throws IOException {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--latency": options.latencyMillis = Long.parseLong(args[++i]); break;
+                    case "--info": options.infoLines = Integer.parseInt(args[++i]); break;
+                    case "--script": options.script = Files.readAllLines(Paths.get(args[++i])); break;
+                    case "--ponder": options.ponder = true; break;
+                    case "--fault": options.fault = Fault.valueOf(args[++i].toUpperCase()); break;
+                    case "--fault-after": options.faultAfter = Integer.parseInt(args[++i]); break;
+                    default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+                }
+            }
+            return options;
+        }
+
+        // The command-line form of these options, for a child process
+        List<String> toArgs() {
+            if (script != null) throw new IllegalStateException("Pass --script to a child process as a file");
+            List<String> args = new ArrayList<>(Arrays.asList("--latency", Long.toString(latencyMillis),
+                    "--info", Integer.toString(infoLines), "--fault", fault.name().toLowerCase(),
+                    "--fault-after", Integer.toString(faultAfter)));
+            if (ponder) args.add("--ponder");
+            return args;
+        }
+    }
+
+    // Malformed or truncated lines a broken engine might print; none of them is a bestmove
+    private static final String[] GARBAGE = {
+        "info depth seven score cp",
+        "info score mate",
+        "info depth 3 pv e2e9 zz",
+        "bestmov e2e4",
+        "\u0000\u0007\u001b[31m",
+        "info string " + String.join("", Collections.nCopies(400, "garbage ")),
+        "",
+    };
+
+    private final Options options;
+    private final BufferedReader in;
+    private final BufferedWriter out;
+    private final Runnable crash;
+    private final Position position = new Position();
+    private final int[] moveBuffer = new int[MoveGenerator.MAX_MOVES];
+    private final Object lock = new Object();
+    private Thread search;
+    private boolean stopRequested;
+    private boolean ponderHit;
+    private volatile boolean hung;
+    private int searches;
+
+    private MockUciEngine(Options options, InputStream in, OutputStream out, Runnable crash) {
+        this.options = options;
+        this.in = new BufferedReader(new InputStreamReader(in));
+        this.out = new BufferedWriter(new OutputStreamWriter(out));
+        this.crash = crash;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        new MockUciEngine(options, System.in, System.out, () -> Runtime.getRuntime().halt(1)).run();
+    }
+
+    // Starts a child JVM running the mock on this JVM's class path
+    static UciTransport.Launcher subprocess(Options options) {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), MockUciEngine.class.getName()));
+        command.addAll(options.toArgs());
+        return () -> UciTransport.start(command);
+    }
+
+    // Runs the mock on a thread of this JVM; a crash closes both pipes, as a dying process would
+    static UciTransport.Launcher inProcess(Options options) {
+        return () -> {
+            Pipe commands = Pipe.open();
+            Pipe replies = Pipe.open();
+            MockUciEngine engine = new MockUciEngine(options, Channels.newInputStream(commands.source()),
+                    Channels.newOutputStream(replies.sink()), () -> {
+                        closeQuietly(replies.sink());
+                        closeQuietly(commands.source());
+                    });
+            Thread thread = new Thread(() -> {
+                try {
+                    engine.run();
+                } catch (IOException e) {
+                    // The bridge closed the pipes
+                }
+            }, "mock-uci-engine");
+            thread.setDaemon(true);
+            thread.start();
+            return UciTransport.connect(Channels.newInputStream(replies.source()), Channels.newOutputStream(commands.sink()));
+        };
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    private void run() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            // A hung engine still drains its input, so the bridge never blocks writing to it
+            if (hung) continue;
+            line = line.trim();
+            if (line.equals("uci")) {
+                println("id name MockUciEngine");
+                println("id author chesspkg");
+                println("uciok");
+            } else if (line.equals("isready")) {
+                println("readyok");
+            } else if (line.startsWith("position ")) {
+                setPosition(line);
+            } else if (line.startsWith("go")) {
+                startSearch(line);
+            } else if (line.equals("stop")) {
+                signal(true, false);
+            } else if (line.equals("ponderhit")) {
+                signal(false, true);
+            } else if (line.equals("quit")) {
+                break;
+            }
+            // ucinewgame and setoption need nothing from a mock
+        }
+        signal(true, false);
+    }
+
+    private void println(String line) throws IOException {
+        synchronized (out) {
+            out.write(line);
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    private void setPosition(String command) {
+        String[] tokens = command.split("\\s+");
+        int movesAt = Arrays.asList(tokens).indexOf("moves");
+        int end = (movesAt < 0) ? tokens.length : movesAt;
+        position.setFen(tokens[1].equals("fen") ? String.join(" ", Arrays.copyOfRange(tokens, 2, end)) : Position.START_FEN);
+        for (int i = end + 1; i < tokens.length; i++) {
+            int move = Move.fromUci(position, tokens[i], moveBuffer);
+            if (move == Move.NONE) break;
+            position.makeMove(move);
+        }
+    }
+
+    private void startSearch(String command) {
+        signal(true, false);
+        joinSearch();
+        boolean waitForStop = command.contains("infinite");
+        boolean ponder = command.contains("ponder");
+        int count = MoveGenerator.generateLegalMoves(position, moveBuffer);
+        String move = (count == 0) ? "(none)" : Move.toUci(moveBuffer[0]);
+        String bestMoveLine = bestMoveLine(count);
+        int index = searches++;
+        synchronized (lock) {
+            stopRequested = false;
+            ponderHit = false;
+        }
+        search = new Thread(() -> {
+            try {
+                search(move, bestMoveLine, index, waitForStop, ponder);
+            } catch (IOException e) {
+                // The bridge went away mid-search
+            }
+        }, "mock-uci-search");
+        search.setDaemon(true);
+        search.start();
+    }
+
+    // "bestmove" for the first of the count legal moves in moveBuffer; with --ponder, plus the first reply
+    private String bestMoveLine(int count) {
+        if (count == 0) return "bestmove (none)";
+        int move = moveBuffer[0];
+        String line = "bestmove " + Move.toUci(move);
+        if (!options.ponder) return line;
+        position.makeMove(move);
+        if (MoveGenerator.generateLegalMoves(position, moveBuffer) > 0) line += " ponder " + Move.toUci(moveBuffer[0]);
+        position.unmakeMove();
+        return line;
+    }
+
+    private void search(String move, String bestMoveLine, int index, boolean waitForStop, boolean ponder)
+            throws IOException {
+        boolean faulty = options.fault != Fault.NONE && index >= options.faultAfter;
+        if (faulty && options.fault == Fault.HANG) {
+            hung = true;
+            return;
+        }
+        if (faulty && options.fault == Fault.CRASH) {
+            crash.run();
+            return;
+        }
+        boolean garbage = faulty && options.fault == Fault.GARBAGE;
+        String answer = bestMoveLine;
+        if (options.script != null) {
+            for (String line : options.script) {
+                line = line.replace("{move}", move);
+                if (line.startsWith("bestmove")) {
+                    // Still held back until the search answers, so stop and ponderhit behave as usual
+                    answer = line;
+                    continue;
+                }
+                println(line);
+                if (garbage) println(GARBAGE[index++ % GARBAGE.length]);
+            }
+        } else {
+            for (int depth = 1; depth <= options.infoLines; depth++) {
+                println("info depth " + depth + " seldepth " + (depth + 2) + " multipv 1 score cp " + (depth * 7 % 40)
+                        + " nodes " + depth * 1000 + " nps 1000000 hashfull 0 time " + depth + " pv " + move);
+                if (garbage) println(GARBAGE[index++ % GARBAGE.length]);
+            }
+        }
+        awaitAnswer(waitForStop, ponder);
+        println(answer);
+    }
+
+    // Waits out the latency, or until stop; a ponder or infinite search waits for stop or ponderhit first
+    private void awaitAnswer(boolean waitForStop, boolean ponder) {
+        synchronized (lock) {
+            try {
+                while ((waitForStop || (ponder && !ponderHit)) && !stopRequested) lock.wait();
+                long deadline = System.nanoTime() + options.latencyMillis * 1_000_000L;
+                long remaining;
+                while (!stopRequested && (remaining = (deadline - System.nanoTime()) / 1_000_000L) > 0) {
+                    lock.wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void signal(boolean stop, boolean ponderhit) {
+        synchronized (lock) {
+            if (stop) stopRequested = true;
+            if (ponderhit) ponderHit = true;
+            lock.notifyAll();
+        }
+    }
+
+    private void joinSearch() {
+        if (search == null) return;
+        try {
+            search.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package chesspkg;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JMH benchmarks for the per-move rules, FEN and UCI parsing paths used by ChessGame.
+// Each benchmark mirrors the work the named ChessGame method does on the position.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RulesBenchmark {
+    @Param({
+        // Middlegames
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 8",
+        // Endgames
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1",
+        "8/8/8/4k3/8/8/3QK3/8 b - - 0 1",
+        // Side to move in check, checkmated and stalemated
+        "rnbqkbnr/ppp2ppp/8/1B1pp3/4P3/8/PPPP1PPP/RNBQK1NR b KQkq - 1 3",
+        "rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3",
+        "7k/5Q2/6K1/8/8/8/8/8 b - - 0 1"
+    })
+    public String fen;
+
+    private final Position position = new Position();
+    private final TurnState turnState = new TurnState();
+    private int selectedSquare;
+    private String uciMove;
+
+    @Setup
+    public void setUp() {
+        position.setFen(fen);
+        turnState.update(position);
+        // With no legal move, the square selects nothing and the engine's answer is "(none)"
+        int move = (turnState.getMoveCount() > 0) ? turnState.getMove(0) : Move.NONE;
+        selectedSquare = Move.from(move);
+        uciMove = (move != Move.NONE) ? Move.toUci(move) : "(none)";
+    }
+
+    // TurnState.update, which ChessGame runs once per ply: legal moves, check state and game status
+    @Benchmark
+    public int turnStateUpdate() {
+        turnState.update(position);
+        return turnState.getStatus().ordinal() + turnState.getMoveCount();
+    }
+
+    // ChessGame.calculateLegalMoves for the first piece with a legal move
+    @Benchmark
+    public long calculateLegalMoves() {
+        return turnState.targetsFrom(selectedSquare);
+    }
+
+    // Full FEN (en passant and clocks included) of the benchmark position
+    @Benchmark
+    public String toFen() {
+        return position.toFen();
+    }
+
+    // "position ..." command built by StockfishEngine for every AI move
+    @Benchmark
+    public String positionCommand() {
+        return StockfishEngine.positionCommand(position);
+    }
+
+    // UCI move-string parsing done by ChessGame.makeAIMove, against the ply's move list
+    @Benchmark
+    public int parseUciMove() {
+        return turnState.findUciMove(uciMove);
+    }
+}
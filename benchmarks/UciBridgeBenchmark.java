@@ -0,0 +1,74 @@
+package chesspkg;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JMH benchmarks for the StockfishEngine bridge against MockUciEngine, so transport changes can be
+// measured without Stockfish. One operation is one getBestMove round trip: "position" and "go" out,
+// the info lines and bestmove back, through a child process's pipes or an in-process pipe pair.
+// The mock answers at once, so the numbers are the bridge's own cost.
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UciBridgeBenchmark {
+    @Param({ "process", "in-process" })
+    public String transport;
+
+    // Info lines the mock prints per search; 0 isolates the command round trip
+    @Param({ "0", "20" })
+    public int infoLines;
+
+    @Param({
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1"
+    })
+    public String fen;
+
+    private final Position position = new Position();
+    private final SearchLimits limits = SearchLimits.NONE.withDepth(1);
+    private StockfishEngine engine;
+
+    @Setup
+    public void setUp() {
+        MockUciEngine.Options options = new MockUciEngine.Options();
+        options.infoLines = infoLines;
+        engine = new StockfishEngine("process".equals(transport)
+                ? MockUciEngine.subprocess(options) : MockUciEngine.inProcess(options));
+        if (!engine.isAvailable()) throw new IllegalStateException(engine.getFailureReason());
+        position.setFen(fen);
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    // Per-request latency; the sample distribution gives the p50/p99/max tail
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String roundTripLatency() {
+        return engine.getBestMove(position, limits);
+    }
+
+    // Back-to-back requests per second
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String throughput() {
+        return engine.getBestMove(position, limits);
+    }
+}
@@ -0,0 +1,83 @@
+package chesspkg;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Timing checks for the StockfishEngine bridge against MockUciEngine: each scenario plays requests
+// through an in-process mock and checks the answer and how many times the engine had to be launched.
+// Exits non-zero if any check fails.
+// Usage: java chesspkg.UciBridgeCheck
+public final class UciBridgeCheck {
+    private static final SearchLimits LIMITS = SearchLimits.NONE.withMoveTime(100);
+
+    private static final class Run {
+        final StockfishEngine engine;
+        final AtomicInteger launches = new AtomicInteger();
+
+        Run(MockUciEngine.Options options) {
+            UciTransport.Launcher mock = MockUciEngine.inProcess(options);
+            engine = new StockfishEngine(() -> {
+                launches.incrementAndGet();
+                return mock.launch();
+            });
+            if (!engine.isAvailable()) throw new IllegalStateException(engine.getFailureReason());
+        }
+    }
+
+    private static boolean allPassed = true;
+
+    private static void check(String name, boolean ok, String detail) {
+        allPassed &= ok;
+        System.out.printf("%-34s %s%n", name, ok ? "ok" : "FAIL (" + detail + ")");
+    }
+
+    // A ponder search stopped long before the next request leaves its bestmove queued; the next
+    // request must read it and search, not take the old stop for a hung engine and restart
+    private static void lateStopOfPonderSearch() throws Exception {
+        MockUciEngine.Options options = new MockUciEngine.Options();
+        options.infoLines = 1;
+        options.ponder = true;
+        Run run = new Run(options);
+        try {
+            run.engine.setPonder(true);
+            Position position = new Position();
+            String first = run.engine.getBestMove(position, LIMITS);
+            run.engine.stop();
+            Thread.sleep(StockfishEngine.STOP_TIMEOUT_MILLIS + 1000);
+            int[] moves = new int[MoveGenerator.MAX_MOVES];
+            position.makeMove(Move.fromUci(position, first, moves));
+            // Not the reply the mock pondered on, so the stopped ponder search has to be finished
+            position.makeMove(moves[MoveGenerator.generateLegalMoves(position, moves) - 1]);
+            String second = run.engine.getBestMove(position, LIMITS);
+            check("stopped ponder search, late reply", second != null && run.launches.get() == 1,
+                    "move " + second + ", " + run.launches.get() + " launches");
+        } finally {
+            run.engine.close();
+        }
+    }
+
+    // An engine that stops answering is still given up on STOP_TIMEOUT_MILLIS after its deadline's
+    // stop, and the request is answered by a restarted one
+    private static void hungEngineRestarted() throws Exception {
+        MockUciEngine.Options options = new MockUciEngine.Options();
+        options.infoLines = 1;
+        options.fault = MockUciEngine.Fault.HANG;
+        options.faultAfter = 1;
+        Run run = new Run(options);
+        try {
+            Position position = new Position();
+            run.engine.getBestMove(position, LIMITS);
+            String answer = run.engine.getBestMove(position, LIMITS);
+            check("hung engine restarted", answer != null && run.launches.get() == 2,
+                    "move " + answer + ", " + run.launches.get() + " launches");
+        } finally {
+            run.engine.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        lateStopOfPonderSearch();
+        hungEngineRestarted();
+        System.out.println(allPassed ? "All bridge checks passed" : "Bridge checks FAILED");
+        System.exit(allPassed ? 0 : 1);
+    }
+}